@@ -57,6 +57,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import pl.asie.foamfix.api.FoamFixAPI;
 import pl.asie.foamfix.common.FoamFixHelper;
+import pl.asie.foamfix.common.FoamyBlockState;
+import pl.asie.foamfix.common.PropertyInterner;
 import pl.asie.foamfix.common.PropertyValueDeduplicator;
 import pl.asie.foamfix.common.WorldNuller;
 import pl.asie.foamfix.ghostbuster.CommandGhostBuster;
@@ -116,6 +118,10 @@ public class FoamFix {
     public void init(FMLInitializationEvent event) {
         stage = 1;
 
+        if (PropertyInterner.isActive()) {
+            getLogger().info(PropertyInterner.getStatistics());
+        }
+
         if (FoamFixShared.config.geDeduplicate) {
             PropertyValueDeduplicator deduplicator = new PropertyValueDeduplicator();
             deduplicator.deduplicate();
@@ -148,6 +154,11 @@ public class FoamFix {
         MinecraftForge.EVENT_BUS.register(this);
     }
 
+    @Mod.EventHandler
+    public void loadComplete(FMLLoadCompleteEvent event) {
+        FoamyBlockState.enableDerivedPropertyCache();
+    }
+
     @Mod.EventHandler
     public void serverStopping(FMLServerStoppingEvent event) {
 
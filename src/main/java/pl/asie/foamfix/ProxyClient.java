@@ -54,6 +54,8 @@ import net.minecraft.client.renderer.texture.TextureMap;
 import net.minecraft.util.EnumFacing;
 import net.minecraftforge.client.event.ModelBakeEvent;
 import net.minecraftforge.client.event.ModelRegistryEvent;
+import net.minecraftforge.client.event.RenderGameOverlayEvent;
+import net.minecraftforge.client.event.TextureStitchEvent;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.client.FMLClientHandler;
 import net.minecraftforge.fml.common.eventhandler.EventPriority;
@@ -117,6 +119,49 @@ public class ProxyClient extends ProxyCommon {
 		bakingStage = 1;
 
 		FoamFixModelDeduplicate.INSTANCE.onModelBake(event);
+		FoamFix.getLogger().info(TransformInterner.getStatistics());
+		ItemQuadCache.INSTANCE.clear();
+
+		if (FoamFixShared.config.clCacheParsedModels) {
+			ParsedModelCache.onReloadFinished();
+		}
+
+		if (FoamFixShared.config.clWarmUpItemQuads > 0) {
+			ItemQuadWarmup.INSTANCE.onModelBake();
+		}
+	}
+
+	@SubscribeEvent
+	public void onTextureStitchPre(TextureStitchEvent.Pre event) {
+		if (FoamFixShared.config.txCompressAnimationFrames) {
+			CompressedFrameList.beginAtlas(event.getMap().getBasePath());
+		}
+	}
+
+	@SubscribeEvent
+	public void onTextureStitchPost(TextureStitchEvent.Post event) {
+		if (FoamFixShared.config.txCompressAnimationFrames) {
+			CompressedFrameList.endAtlas();
+		}
+	}
+
+	@SubscribeEvent
+	public void onDebugOverlay(RenderGameOverlayEvent.Text event) {
+		if (FoamFixShared.config.dbgShowCacheStats && Minecraft.getMinecraft().gameSettings.showDebugInfo) {
+			event.getRight().add("");
+			event.getRight().add("[FoamFix] " + ItemQuadCache.INSTANCE.getStatistics());
+			if (FoamFixShared.config.clCacheParsedModels) {
+				event.getRight().add("[FoamFix] " + ParsedModelCache.getStatistics());
+			}
+			if (FoamFixShared.isCoremod && FoamFixShared.config.txEnable) {
+				event.getRight().add("[FoamFix] " + AnimationUploadScheduler.getStatistics());
+				if (FoamFixShared.config.txCompressAnimationFrames) {
+					for (String s : CompressedFrameList.getStatistics()) {
+						event.getRight().add("[FoamFix] " + s);
+					}
+				}
+			}
+		}
 	}
 
 	@Override
@@ -133,6 +178,19 @@ public class ProxyClient extends ProxyCommon {
 
 		if (FoamFixShared.config.clDynamicItemModels) {
 			FoamFixDynamicItemModels.register();
+
+			if (FoamFixShared.config.clWarmUpItemQuads > 0) {
+				ItemQuadWarmup.INSTANCE.register();
+				MinecraftForge.EVENT_BUS.register(ItemQuadWarmup.INSTANCE);
+			}
+		}
+
+		if (FoamFixShared.isCoremod && FoamFixShared.config.txEnable) {
+			MinecraftForge.EVENT_BUS.register(AnimationUploadScheduler.INSTANCE);
+
+			if (FoamFixShared.config.txInvisibleAnimationTimeout > 0) {
+				MinecraftForge.EVENT_BUS.register(AnimationVisibilityTracker.INSTANCE);
+			}
 		}
 
 		updateFasterAnimationFlag();
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.client;
+
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+import pl.asie.foamfix.shared.FoamFixShared;
+
+/**
+ * Caps the amount of animation frame data uploaded from the CPU per tick, and
+ * counts what animation updates cost. Uploads over the budget are deferred by
+ * FastTextureAtlasSprite to a later tick, up to the animation's tolerance -
+ * past that, they are forced through regardless of the budget.
+ *
+ * Only accessed from the client thread.
+ */
+public final class AnimationUploadScheduler {
+    public static final AnimationUploadScheduler INSTANCE = new AnimationUploadScheduler();
+
+    // one second
+    private static final int STATISTICS_TICKS = 20;
+
+    private static long bytesThisTick;
+    private static int uploads, copies, deferred, forced, updates;
+    private static long bytes, nanos;
+
+    // totals over the last STATISTICS_TICKS ticks
+    private static int tickCount, lastUploads, lastCopies, lastDeferred, lastForced, lastUpdates;
+    private static long lastBytes, lastNanos, maxBytes, maxNanos, tickMaxBytes, tickMaxNanos, tickNanos;
+
+    private AnimationUploadScheduler() {
+
+    }
+
+    public static long getUploadSize(int[][] data, int mipLevels) {
+        long size = 0;
+        for (int mip = 0; mip <= mipLevels && mip < data.length; mip++) {
+            if (data[mip] != null) {
+                size += data[mip].length * 4L;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param size The size of the upload, in bytes.
+     * @param force Whether the upload must happen now, as it was already deferred for as long as allowed.
+     * @return Whether the upload may happen this tick. If true, the upload is assumed to have happened.
+     */
+    public static boolean requestUpload(long size, boolean force) {
+        long budget = FoamFixShared.config.txAnimationUploadBudget * 1024L;
+        // always allow at least one upload per tick, or large frames would only ever be forced
+        if (budget > 0 && !force && bytesThisTick > 0 && bytesThisTick + size > budget) {
+            deferred++;
+            return false;
+        }
+
+        if (force && budget > 0 && bytesThisTick + size > budget) {
+            forced++;
+        }
+        bytesThisTick += size;
+        bytes += size;
+        uploads++;
+        return true;
+    }
+
+    public static void countCopy() {
+        copies++;
+    }
+
+    public static void countUpdate(long time) {
+        updates++;
+        nanos += time;
+        tickNanos += time;
+    }
+
+    @SubscribeEvent
+    public void onClientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase != TickEvent.Phase.START) {
+            return;
+        }
+
+        tickMaxBytes = Math.max(tickMaxBytes, bytesThisTick);
+        tickMaxNanos = Math.max(tickMaxNanos, tickNanos);
+        bytesThisTick = 0;
+        tickNanos = 0;
+
+        if (++tickCount >= STATISTICS_TICKS) {
+            lastUploads = uploads;
+            lastCopies = copies;
+            lastDeferred = deferred;
+            lastForced = forced;
+            lastUpdates = updates;
+            lastBytes = bytes;
+            lastNanos = nanos;
+            maxBytes = tickMaxBytes;
+            maxNanos = tickMaxNanos;
+            uploads = copies = deferred = forced = updates = 0;
+            bytes = nanos = tickMaxBytes = tickMaxNanos = 0;
+            tickCount = 0;
+        }
+    }
+
+    public static String getStatistics() {
+        return String.format("Animations: %.1f us/tick (max %d us), %.1f KB/tick uploaded (max %d KB), %d updates, %d uploads, %d copies, %d deferred, %d forced per second",
+                lastNanos / 1000.0 / STATISTICS_TICKS, maxNanos / 1000, lastBytes / 1024.0 / STATISTICS_TICKS, maxBytes / 1024,
+                lastUpdates, lastUploads, lastCopies, lastDeferred, lastForced);
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.client;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.RenderGlobal;
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import net.minecraft.client.renderer.block.model.IBakedModel;
+import net.minecraft.client.renderer.block.model.ItemCameraTransforms;
+import net.minecraft.client.renderer.block.model.ItemOverrideList;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.util.EnumFacing;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+import pl.asie.foamfix.FoamFix;
+import org.apache.commons.lang3.tuple.Pair;
+import pl.asie.foamfix.util.MethodHandleHelper;
+
+import javax.annotation.Nullable;
+import javax.vecmath.Matrix4f;
+import java.lang.invoke.MethodHandle;
+import java.util.*;
+
+/**
+ * Tracks which animated sprites are on screen, so that FastTextureAtlasSprite
+ * can skip updating the ones which are not.
+ *
+ * The animated sprites used by each render chunk are collected from the
+ * quads its block models emit as it is compiled (see AnimationVisibilityPatch),
+ * and stamped every tick for the chunks RenderGlobal considers visible. Block
+ * models drawn outside of chunks (falling blocks, moving pistons, blocks held
+ * by entities) and item models stamp their sprites as they are rendered.
+ *
+ * Only sprites which appeared in a compiled chunk are ever skipped. Code which
+ * draws such a sprite by its UVs rather than through a model - typically a
+ * TESR or entity renderer - is not seen, so that sprite only animates there
+ * while a chunk using it is visible, or not at all once the timeout passes.
+ */
+public final class AnimationVisibilityTracker {
+    public static final AnimationVisibilityTracker INSTANCE = new AnimationVisibilityTracker();
+
+    private static final FastTextureAtlasSprite[] NO_SPRITES = new FastTextureAtlasSprite[0];
+
+    private static final MethodHandle RENDER_INFOS_GETTER = MethodHandleHelper.findFieldGetter(RenderGlobal.class, "renderInfos", "field_72755_R");
+    private static final MethodHandle RENDER_CHUNK_GETTER = MethodHandleHelper.findFieldGetter("net.minecraft.client.renderer.RenderGlobal$ContainerLocalRenderInformation", "renderChunk", "field_178036_a");
+
+    private static final Map<Object, FastTextureAtlasSprite[]> chunkSprites = new WeakHashMap<>();
+    private static final ThreadLocal<RecordingModel> recordingModel = ThreadLocal.withInitial(RecordingModel::new);
+    private static int tick;
+    private static boolean failed;
+
+    private AnimationVisibilityTracker() {
+
+    }
+
+    public static int getTick() {
+        return tick;
+    }
+
+    /**
+     * @return Whether sprites may be skipped - false if visible chunks could not be read.
+     */
+    public static boolean isActive() {
+        return !failed;
+    }
+
+    /**
+     * Records the animated sprites of the quads a block model actually emits,
+     * so that weighted variants, multipart parts and state-dependent quads
+     * are all seen - whatever the renderer asks the model for. There is one
+     * per thread, pointed at each model as BlockModelRenderer.renderModel is
+     * called, which does not nest.
+     */
+    private static final class RecordingModel implements IBakedModel {
+        private final Set<FastTextureAtlasSprite> sprites = new HashSet<>();
+        private IBakedModel parent;
+        private boolean compiling;
+
+        @Override
+        public List<BakedQuad> getQuads(@Nullable IBlockState state, @Nullable EnumFacing side, long rand) {
+            List<BakedQuad> quads = parent.getQuads(state, side, rand);
+            for (int i = 0; i < quads.size(); i++) {
+                TextureAtlasSprite sprite = quads.get(i).getSprite();
+                if (sprite instanceof FastTextureAtlasSprite && sprite.hasAnimationMetadata()) {
+                    if (!compiling) {
+                        ((FastTextureAtlasSprite) sprite).markVisible(tick);
+                    } else if (sprites.add((FastTextureAtlasSprite) sprite)) {
+                        ((FastTextureAtlasSprite) sprite).setTrackedByBlocks();
+                    }
+                }
+            }
+            return quads;
+        }
+
+        @Override
+        public boolean isAmbientOcclusion() {
+            return parent.isAmbientOcclusion();
+        }
+
+        @Override
+        public boolean isAmbientOcclusion(IBlockState state) {
+            return parent.isAmbientOcclusion(state);
+        }
+
+        @Override
+        public boolean isGui3d() {
+            return parent.isGui3d();
+        }
+
+        @Override
+        public boolean isBuiltInRenderer() {
+            return parent.isBuiltInRenderer();
+        }
+
+        @Override
+        public TextureAtlasSprite getParticleTexture() {
+            return parent.getParticleTexture();
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public ItemCameraTransforms getItemCameraTransforms() {
+            return parent.getItemCameraTransforms();
+        }
+
+        @Override
+        public ItemOverrideList getOverrides() {
+            return parent.getOverrides();
+        }
+
+        @Override
+        public Pair<? extends IBakedModel, Matrix4f> handlePerspective(ItemCameraTransforms.TransformType type) {
+            return parent.handlePerspective(type);
+        }
+    }
+
+    /**
+     * Called by BlockModelRenderer.renderModel to replace the model it renders. While a
+     * render chunk is being compiled on this thread, the sprites of the quads it emits
+     * are collected for the chunk; otherwise they are stamped as visible.
+     */
+    public static IBakedModel getModelForRender(IBakedModel model) {
+        if (model instanceof RecordingModel) {
+            return model;
+        }
+
+        RecordingModel recording = recordingModel.get();
+        recording.parent = model;
+        return recording;
+    }
+
+    /**
+     * Called at the start of RenderChunk.rebuildChunk.
+     */
+    public static void beginChunk() {
+        RecordingModel recording = recordingModel.get();
+        recording.sprites.clear();
+        recording.compiling = true;
+    }
+
+    /**
+     * Called whenever RenderChunk.rebuildChunk returns or throws.
+     */
+    public static void endChunk(Object renderChunk) {
+        RecordingModel recording = recordingModel.get();
+        if (recording.compiling) {
+            FastTextureAtlasSprite[] sprites = recording.sprites.isEmpty() ? NO_SPRITES : recording.sprites.toArray(new FastTextureAtlasSprite[0]);
+            recording.compiling = false;
+            recording.sprites.clear();
+            synchronized (chunkSprites) {
+                chunkSprites.put(renderChunk, sprites);
+            }
+        }
+    }
+
+    /**
+     * Called by RenderItem.renderQuads and BlockModelRenderer.renderModelBrightnessColorQuads.
+     */
+    public static void markQuads(List<BakedQuad> quads) {
+        for (int i = 0; i < quads.size(); i++) {
+            TextureAtlasSprite sprite = quads.get(i).getSprite();
+            if (sprite instanceof FastTextureAtlasSprite) {
+                ((FastTextureAtlasSprite) sprite).markVisible(tick);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public void onClientTick(TickEvent.ClientTickEvent event) {
+        // before TextureMap.updateAnimations, which runs later in the same tick
+        if (event.phase != TickEvent.Phase.START) {
+            return;
+        }
+
+        tick++;
+        RenderGlobal renderGlobal = Minecraft.getMinecraft().renderGlobal;
+        if (renderGlobal == null || failed) {
+            return;
+        } else if (RENDER_INFOS_GETTER == null || RENDER_CHUNK_GETTER == null) {
+            failed = true;
+            return;
+        }
+
+        try {
+            List<?> renderInfos = (List<?>) RENDER_INFOS_GETTER.invoke(renderGlobal);
+            synchronized (chunkSprites) {
+                for (Object info : renderInfos) {
+                    FastTextureAtlasSprite[] sprites = chunkSprites.get(RENDER_CHUNK_GETTER.invoke(info));
+                    if (sprites != null) {
+                        for (FastTextureAtlasSprite sprite : sprites) {
+                            sprite.markVisible(tick);
+                        }
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            FoamFix.getLogger().error("Could not read visible render chunks - animations will always be updated!", t);
+            failed = true;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.client;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.*;
+
+/**
+ * A list of animation frames (ARGB data per mip level) which keeps the frames
+ * palette-encoded, with one byte per pixel, whenever a mip level has at most
+ * 256 distinct colors. This is true for most animated textures. Frames are
+ * decoded as they are requested, into two buffers owned by the list; the two
+ * most recently requested frames (usually the current frame and the one after
+ * it) stay decoded.
+ *
+ * The returned arrays must not be modified, and are only valid until two more
+ * frames have been requested.
+ */
+public class CompressedFrameList extends AbstractList<int[][]> {
+    private static final class PaletteData {
+        private final int[] palette;
+        private final byte[] indices;
+
+        private PaletteData(int[] palette, byte[] indices) {
+            this.palette = palette;
+            this.indices = indices;
+        }
+
+        private int[] decode(int[] data) {
+            if (data == null || data.length != indices.length) {
+                data = new int[indices.length];
+            }
+            for (int i = 0; i < data.length; i++) {
+                data[i] = palette[indices[i] & 0xFF];
+            }
+            return data;
+        }
+    }
+
+    private static final class Statistics {
+        private final String name;
+        private long rawBytes, encodedBytes, decodes, decodeNanos;
+
+        private Statistics(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("Animation frames (%s): %d KB stored as %d KB, %d decodes (%.1f us avg)",
+                    name, rawBytes / 1024, encodedBytes / 1024, decodes, decodes > 0 ? decodeNanos / 1000.0 / decodes : 0.0);
+        }
+    }
+
+    private static final Map<String, Statistics> statistics = new LinkedHashMap<>();
+    private static Statistics currentStatistics = getStatistics("other");
+
+    // per frame: an Object[] of per-mip PaletteData or int[] (or null)
+    private final List<Object[]> frames;
+    private final Statistics stats;
+    private final int[] cachedIndex = { -1, -1 };
+    private final int[][][] cachedFrame = new int[2][][];
+    // the arrays palette-encoded mips are decoded into, per cache slot
+    private final int[][][] buffers = new int[2][][];
+    private int cacheNext;
+
+    public CompressedFrameList(List<int[][]> frames) {
+        synchronized (CompressedFrameList.class) {
+            this.stats = currentStatistics;
+        }
+        this.frames = new ArrayList<>(frames.size());
+        for (int[][] frame : frames) {
+            this.frames.add(encode(frame));
+        }
+    }
+
+    private static Statistics getStatistics(String name) {
+        return statistics.computeIfAbsent(name, Statistics::new);
+    }
+
+    private static Object encodeMip(int[] data) {
+        TIntIntHashMap colors = new TIntIntHashMap(64);
+        byte[] indices = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            int index = colors.get(data[i]);
+            if (index == 0) {
+                if (colors.size() >= 256) {
+                    return data;
+                }
+                // stored off by one, as 0 is the no-entry value
+                index = colors.size() + 1;
+                colors.put(data[i], index);
+            }
+            indices[i] = (byte) (index - 1);
+        }
+
+        int[] palette = new int[colors.size()];
+        colors.forEachEntry((color, index) -> {
+            palette[index - 1] = color;
+            return true;
+        });
+        return new PaletteData(palette, indices);
+    }
+
+    private Object[] encode(int[][] frame) {
+        if (frame == null) {
+            return null;
+        }
+
+        Object[] mips = new Object[frame.length];
+        long raw = 0, encoded = 0;
+        for (int i = 0; i < frame.length; i++) {
+            if (frame[i] != null) {
+                mips[i] = encodeMip(frame[i]);
+                raw += frame[i].length * 4L;
+                encoded += mips[i] instanceof PaletteData
+                        ? ((PaletteData) mips[i]).indices.length + ((PaletteData) mips[i]).palette.length * 4L
+                        : frame[i].length * 4L;
+            }
+        }
+
+        synchronized (stats) {
+            stats.rawBytes += raw;
+            stats.encodedBytes += encoded;
+        }
+        return mips;
+    }
+
+    private int[][] decode(Object[] mips, int slot) {
+        if (mips == null) {
+            return null;
+        }
+
+        long time = System.nanoTime();
+        int[][] frame = cachedFrame[slot];
+        if (frame == null || frame.length != mips.length) {
+            frame = new int[mips.length][];
+            buffers[slot] = new int[mips.length][];
+        }
+
+        int[][] buffer = buffers[slot];
+        for (int i = 0; i < mips.length; i++) {
+            if (mips[i] instanceof PaletteData) {
+                frame[i] = buffer[i] = ((PaletteData) mips[i]).decode(buffer[i]);
+            } else {
+                frame[i] = (int[]) mips[i];
+            }
+        }
+
+        synchronized (stats) {
+            stats.decodes++;
+            stats.decodeNanos += System.nanoTime() - time;
+        }
+        return frame;
+    }
+
+    private void invalidate() {
+        cachedIndex[0] = cachedIndex[1] = -1;
+    }
+
+    @Override
+    public synchronized int[][] get(int index) {
+        for (int i = 0; i < 2; i++) {
+            if (cachedIndex[i] == index) {
+                // the other slot is now the least recently used one
+                cacheNext = i ^ 1;
+                return cachedFrame[i];
+            }
+        }
+
+        Object[] mips = frames.get(index);
+        if (mips == null) {
+            return null;
+        }
+
+        int slot = cacheNext;
+        cacheNext ^= 1;
+        cachedIndex[slot] = index;
+        return cachedFrame[slot] = decode(mips, slot);
+    }
+    @Override
+    public synchronized int size() {
+        return frames.size();
+    }
+
+    @Override
+    public synchronized int[][] set(int index, int[][] element) {
+        int[][] old = decodeCopy(frames.get(index));
+        frames.set(index, encode(element));
+        invalidate();
+        return old;
+    }
+
+    @Override
+    public synchronized void add(int index, int[][] element) {
+        frames.add(index, encode(element));
+        invalidate();
+    }
+
+    @Override
+    public synchronized int[][] remove(int index) {
+        int[][] old = decodeCopy(frames.get(index));
+        frames.remove(index);
+        invalidate();
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        frames.clear();
+        invalidate();
+    }
+
+    // for removed frames, which must not share the reused buffers
+    private static int[][] decodeCopy(Object[] mips) {
+        if (mips == null) {
+            return null;
+        }
+
+        int[][] frame = new int[mips.length][];
+        for (int i = 0; i < mips.length; i++) {
+            frame[i] = mips[i] instanceof PaletteData ? ((PaletteData) mips[i]).decode(null) : (int[]) mips[i];
+        }
+        return frame;
+    }
+
+    /**
+     * Starts a new set of statistics for the given texture atlas, which frame lists
+     * created from now on count towards.
+     */
+    public static synchronized void beginAtlas(String name) {
+        statistics.remove(name);
+        currentStatistics = getStatistics(name);
+    }
+
+    public static synchronized void endAtlas() {
+        currentStatistics = getStatistics("other");
+    }
+
+    public static synchronized void resetStatistics() {
+        statistics.clear();
+        currentStatistics = getStatistics("other");
+    }
+
+    public static synchronized List<String> getStatistics() {
+        List<String> list = new ArrayList<>(statistics.size());
+        for (Statistics stats : statistics.values()) {
+            synchronized (stats) {
+                if (stats.rawBytes > 0) {
+                    list.add(stats.toString());
+                }
+            }
+        }
+        return list;
+    }
+}
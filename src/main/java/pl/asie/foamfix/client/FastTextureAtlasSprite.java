@@ -52,11 +52,23 @@ import pl.asie.foamfix.FoamFix;
 import pl.asie.foamfix.api.IFoamFixSprite;
 import pl.asie.foamfix.shared.FoamFixShared;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class FastTextureAtlasSprite extends TextureAtlasSprite implements IFoamFixSprite {
+    private static int maxTextureSize = -1;
+
     private int textureId = -1;
     private int mipLevels = 0;
+    // holding texture slot of the first in-between frame of each animation position, or -1
+    private int[] interpolatedSlots;
+    // see AnimationVisibilityTracker
+    private boolean trackedByBlocks;
+    private int visibleTick, skippedTicks;
+    // see AnimationUploadScheduler
+    private int[][] pendingFrame;
+    private int pendingFrameMips, deferredTicks, uploadAttempts;
 
     public FastTextureAtlasSprite(String p_i1282_1_) {
         super(p_i1282_1_);
@@ -67,6 +79,29 @@ public class FastTextureAtlasSprite extends TextureAtlasSprite implements IFoamF
         if (FoamFixShared.config.clDisableTextureAnimations)
             return;
 
+        long time = System.nanoTime();
+        int attempts = uploadAttempts;
+        updateAnimationTick();
+
+        // nothing new to upload this tick - retry the deferred one
+        if (pendingFrame != null && uploadAttempts == attempts) {
+            uploadFrame(pendingFrame, pendingFrameMips, "updateAnimation | deferred");
+        }
+
+        AnimationUploadScheduler.countUpdate(System.nanoTime() - time);
+    }
+
+    private void updateAnimationTick() {
+        int timeout = FoamFixShared.config.txInvisibleAnimationTimeout;
+        if (timeout > 0 && trackedByBlocks && AnimationVisibilityTracker.isActive()) {
+            if (AnimationVisibilityTracker.getTick() - visibleTick > timeout) {
+                ++skippedTicks;
+                return;
+            } else if (skippedTicks > 0) {
+                catchUpAnimation();
+            }
+        }
+
         ++tickCounter;
 
         if (tickCounter >= animationMetadata.getFrameTimeSingle(frameCounter)) {
@@ -79,47 +114,114 @@ public class FastTextureAtlasSprite extends TextureAtlasSprite implements IFoamF
             if (i != k && k >= 0 && k < framesTextureData.size()) {
 
                 if (textureId != -1) {
-                    int destTex = GL11.glGetInteger(GL11.GL_TEXTURE_BINDING_2D);
-                    checkGLError("updateAnimation | fastPath getPreviousTexture");
-
-                    // Unbinding texture for safety, since copy image has an explicit destination.
-                    GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
-                    checkGLError("updateAnimation | fastPath unbindTex");
-
-                    for (int mip = 0; mip <= mipLevels; ++mip) {
-                        ARBCopyImage
-                                .glCopyImageSubData(textureId, GL11.GL_TEXTURE_2D, mip, (width * k) >> mip, 0, 0, destTex, GL11.GL_TEXTURE_2D, mip, originX >> mip,
-                                        originY >> mip,
-                                        0, width >> mip, height >> mip, 1);
-                        checkGLError("updateAnimation | fastPath mip="+mip);
-                    }
-
-                    GL11.glBindTexture(GL11.GL_TEXTURE_2D, destTex);
-                    checkGLError("updateAnimation | fastPath rebindTex");
+                    copyFromHoldingTexture(k);
                 } else {
-                    int[][] frameData = this.framesTextureData.get(k);
-                    uploadTextureMaxMips(mipLevels, frameData, width, height, originX, originY, false, false, frameData.length > 1);
-                    checkGLError("updateAnimation | slowPath");
+                    uploadFrame(this.framesTextureData.get(k), mipLevels, "updateAnimation | slowPath");
                 }
             }
         } else if (this.animationMetadata.isInterpolate()) {
-            this.updateAnimationInterpolated();
+            if (textureId != -1 && interpolatedSlots != null && interpolatedSlots[frameCounter] >= 0) {
+                copyFromHoldingTexture(interpolatedSlots[frameCounter] + tickCounter - 1);
+            } else {
+                this.updateAnimationInterpolated();
+            }
+        }
+    }
+
+    public void setTrackedByBlocks() {
+        trackedByBlocks = true;
+    }
+
+    public void markVisible(int tick) {
+        visibleTick = tick;
+    }
+
+    /**
+     * Advances the animation by the ticks skipped while it was not visible, and uploads
+     * the frame it ends up on.
+     */
+    private void catchUpAnimation() {
+        int frameCount = animationMetadata.getFrameCount() == 0 ? framesTextureData.size() : animationMetadata.getFrameCount();
+        long cycleLength = 0;
+        for (int i = 0; i < frameCount; i++) {
+            cycleLength += Math.max(1, animationMetadata.getFrameTimeSingle(i));
+        }
+
+        int ticks = (int) (skippedTicks % cycleLength);
+        skippedTicks = 0;
+        tickCounter += ticks;
+        int frameTime;
+        while (tickCounter >= (frameTime = Math.max(1, animationMetadata.getFrameTimeSingle(frameCounter)))) {
+            tickCounter -= frameTime;
+            frameCounter = (frameCounter + 1) % frameCount;
+        }
+
+        int k = animationMetadata.getFrameIndex(frameCounter);
+        if (k >= 0 && k < framesTextureData.size()) {
+            if (textureId != -1) {
+                copyFromHoldingTexture(k);
+            } else {
+                uploadFrame(this.framesTextureData.get(k), mipLevels, "updateAnimation | catchUp");
+            }
         }
     }
 
-    private int interpolateColor(double ratio, int from, int to) {
-        return (int)((ratio * from) + ((1.0D - ratio) * to));
+    /**
+     * Uploads a frame from the CPU, unless the per-tick upload budget is used up - in which
+     * case it is retried on the next tick. Deferring is allowed for up to half of the current
+     * frame's time, so that no frame is skipped outright.
+     */
+    private void uploadFrame(int[][] frameData, int maxMips, String desc) {
+        uploadAttempts++;
+        int tolerance = (animationMetadata.getFrameTimeSingle(frameCounter) - 1) / 2;
+        if (AnimationUploadScheduler.requestUpload(AnimationUploadScheduler.getUploadSize(frameData, maxMips), deferredTicks >= tolerance)) {
+            uploadTextureMaxMips(maxMips, frameData, width, height, originX, originY, false, false, frameData.length > 1);
+            checkGLError(desc);
+            pendingFrame = null;
+            deferredTicks = 0;
+        } else {
+            pendingFrame = frameData;
+            pendingFrameMips = maxMips;
+            deferredTicks++;
+        }
+    }
+
+    private void copyFromHoldingTexture(int slot) {
+        AnimationUploadScheduler.countCopy();
+        int destTex = GL11.glGetInteger(GL11.GL_TEXTURE_BINDING_2D);
+        checkGLError("updateAnimation | fastPath getPreviousTexture");
+
+        // Unbinding texture for safety, since copy image has an explicit destination.
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+        checkGLError("updateAnimation | fastPath unbindTex");
+
+        for (int mip = 0; mip <= mipLevels; ++mip) {
+            ARBCopyImage
+                    .glCopyImageSubData(textureId, GL11.GL_TEXTURE_2D, mip, (width * slot) >> mip, 0, 0, destTex, GL11.GL_TEXTURE_2D, mip, originX >> mip,
+                            originY >> mip,
+                            0, width >> mip, height >> mip, 1);
+            checkGLError("updateAnimation | fastPath mip="+mip);
+        }
+
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, destTex);
+        checkGLError("updateAnimation | fastPath rebindTex");
     }
 
-    private boolean interpolateFrame(int[] to, int[] from1, int[] from2, double ratio) {
+    /**
+     * Blends two frames with a fixed-point weight (0-256) of the first one. Red and blue
+     * are blended together in one int, as neither can overflow into the other's byte;
+     * green is done separately. Alpha is taken from the first frame, as in vanilla.
+     * Matches vanilla's double-precision blend within 1 per channel.
+     */
+    public static boolean interpolateFrame(int[] to, int[] from1, int[] from2, int weight) {
         if (from1.length == from2.length) {
+            int weight2 = 256 - weight;
             for (int i = 0; i < from1.length; ++i) {
                 int color1 = from1[i];
                 int color2 = from2[i];
-                int colorRed = this.interpolateColor(ratio, color1 >> 16 & 0xFF, color2 >> 16 & 0xFF);
-                int colorGreen = this.interpolateColor(ratio, color1 >> 8 & 0xFF, color2 >> 8 & 0xFF);
-                int colorBlue = this.interpolateColor(ratio, color1 & 0xFF, color2 & 0xFF);
-                to[i] = color1 & 0xFF000000 | colorRed << 16 | colorGreen << 8 | colorBlue;
+                int rb = ((color1 & 0xFF00FF) * weight + (color2 & 0xFF00FF) * weight2) >>> 8;
+                int g = ((color1 & 0xFF00) * weight + (color2 & 0xFF00) * weight2) >>> 8;
+                to[i] = (color1 & 0xFF000000) | (rb & 0xFF00FF) | (g & 0xFF00);
             }
             return true;
         } else {
@@ -127,9 +229,16 @@ public class FastTextureAtlasSprite extends TextureAtlasSprite implements IFoamF
         }
     }
 
+    /**
+     * @return The weight of the current frame, out of 256, with tickCounter ticks passed out of frameTime.
+     */
+    public static int getInterpolationWeight(int tickCounter, int frameTime) {
+        return 256 - (tickCounter * 256 + (frameTime >> 1)) / frameTime;
+    }
+
     @Override
     protected void updateAnimationInterpolated() {
-        double ratio = 1.0D - (double)this.tickCounter / (double)this.animationMetadata.getFrameTimeSingle(this.frameCounter);
+        int weight = getInterpolationWeight(this.tickCounter, this.animationMetadata.getFrameTimeSingle(this.frameCounter));
         int currentFrameIndex = this.animationMetadata.getFrameIndex(this.frameCounter);
         int frameCount = this.animationMetadata.getFrameCount() == 0 ? this.framesTextureData.size() : this.animationMetadata.getFrameCount();
         int nextFrameIndex = this.animationMetadata.getFrameIndex((this.frameCounter + 1) % frameCount);
@@ -151,10 +260,10 @@ public class FastTextureAtlasSprite extends TextureAtlasSprite implements IFoamF
                     this.interpolatedFrameData[mipLvl] = new int[frame1[mipLvl].length];
                 }
 
-                interpolateFrame(this.interpolatedFrameData[mipLvl], frame1[mipLvl], frame2[mipLvl], ratio);
+                interpolateFrame(this.interpolatedFrameData[mipLvl], frame1[mipLvl], frame2[mipLvl], weight);
             }
 
-            uploadTextureMaxMips(mipLvl, this.interpolatedFrameData, width, height, originX, originY, false, false, interpolatedFrameData.length > 1);
+            uploadFrame(this.interpolatedFrameData, mipLvl, "updateAnimation | interpolated");
         }
     }
 
@@ -167,12 +276,14 @@ public class FastTextureAtlasSprite extends TextureAtlasSprite implements IFoamF
         }
 
         super.setFramesTextureData(textureData);
-
-        // TODO: Precalculate certain interpolated textures?
+        interpolatedSlots = null;
 
         // No need for extra texture if there's only one frame.
         // We're also not caching really long sets of animation.
         if (textureData.size() > 1 && textureData.size() <= FoamFixShared.config.txCacheAnimationMaxFrames && FoamFix.shouldFasterAnimation) {
+            List<int[][]> interpolatedFrames = createInterpolatedFrames();
+            int slots = framesTextureData.size() + interpolatedFrames.size();
+
             textureId = GL11.glGenTextures();
             checkGLError("setFramesTextureData | createTexture");
 
@@ -194,7 +305,7 @@ public class FastTextureAtlasSprite extends TextureAtlasSprite implements IFoamF
 
             // Reserve memory for texture
             for (int i = 0; i <= mipLevels; ++i) {
-                GL11.glTexImage2D(GL11.GL_TEXTURE_2D, i, GL11.GL_RGBA, (width * framesTextureData.size()) >> i, height >> i, 0, GL12.GL_BGRA,
+                GL11.glTexImage2D(GL11.GL_TEXTURE_2D, i, GL11.GL_RGBA, (width * slots) >> i, height >> i, 0, GL12.GL_BGRA,
                         GL11.GL_UNSIGNED_BYTE, (java.nio.ByteBuffer) null);
                 checkGLError("setFramesTextureData | createMip " + i);
             }
@@ -205,10 +316,87 @@ public class FastTextureAtlasSprite extends TextureAtlasSprite implements IFoamF
                 checkGLError("setFramesTextureData | uploadFrame " + i);
             }
 
+            // ...followed by the in-between frames of interpolated animations
+            for (int i = 0; i < interpolatedFrames.size(); ++i) {
+                int[][] frameData = interpolatedFrames.get(i);
+                uploadTextureMaxMips(mipLevels, frameData, width, height, width * (framesTextureData.size() + i), 0, false, false, frameData.length > 1);
+                checkGLError("setFramesTextureData | uploadInterpolatedFrame " + i);
+            }
+
             // Restore old texture
             GL11.glBindTexture(GL11.GL_TEXTURE_2D, prevTex);
             checkGLError("setFramesTextureData | restoreTexture");
         }
+
+        // Keep the frames compressed on the CPU side; they are decoded again as needed
+        if (FoamFixShared.config.txCompressAnimationFrames && textureData.size() > 1 && !(textureData instanceof CompressedFrameList)) {
+            framesTextureData = new CompressedFrameList(textureData);
+        }
+    }
+
+    /**
+     * Blends every in-between frame of a short interpolated animation, the same way
+     * updateAnimationInterpolated would, and assigns them holding texture slots after
+     * the regular frames. Returns an empty list (and leaves interpolatedSlots null) if
+     * the animation is not interpolated or the frames would not fit.
+     */
+    private List<int[][]> createInterpolatedFrames() {
+        if (!hasAnimationMetadata() || !animationMetadata.isInterpolate() || FoamFixShared.config.txCacheInterpolatedFramesSize <= 0) {
+            return Collections.emptyList();
+        }
+
+        if (maxTextureSize < 0) {
+            maxTextureSize = GL11.glGetInteger(GL11.GL_MAX_TEXTURE_SIZE);
+        }
+
+        int frameCount = animationMetadata.getFrameCount() == 0 ? framesTextureData.size() : animationMetadata.getFrameCount();
+        int[] slots = new int[frameCount];
+        int count = 0;
+        for (int i = 0; i < frameCount; i++) {
+            int currentFrameIndex = animationMetadata.getFrameIndex(i);
+            int nextFrameIndex = animationMetadata.getFrameIndex((i + 1) % frameCount);
+            if (currentFrameIndex != nextFrameIndex && currentFrameIndex >= 0 && currentFrameIndex < framesTextureData.size()
+                    && nextFrameIndex >= 0 && nextFrameIndex < framesTextureData.size()) {
+                slots[i] = framesTextureData.size() + count;
+                count += animationMetadata.getFrameTimeSingle(i) - 1;
+            } else {
+                slots[i] = -1;
+            }
+        }
+
+        long frameBytes = 0;
+        for (int mip = 0; mip <= mipLevels; ++mip) {
+            frameBytes += (long) (width >> mip) * (height >> mip) * 4;
+        }
+
+        if (count == 0 || (long) count * frameBytes > FoamFixShared.config.txCacheInterpolatedFramesSize * 1024L
+                || (long) width * (framesTextureData.size() + count) > maxTextureSize) {
+            return Collections.emptyList();
+        }
+
+        List<int[][]> frames = new ArrayList<>(count);
+        for (int i = 0; i < frameCount; i++) {
+            if (slots[i] < 0) {
+                continue;
+            }
+
+            int[][] frame1 = framesTextureData.get(animationMetadata.getFrameIndex(i));
+            int[][] frame2 = framesTextureData.get(animationMetadata.getFrameIndex((i + 1) % frameCount));
+            int mips = Math.min(mipLevels + 1, Math.min(frame1.length, frame2.length));
+            int frameTime = animationMetadata.getFrameTimeSingle(i);
+            for (int tick = 1; tick < frameTime; tick++) {
+                int weight = getInterpolationWeight(tick, frameTime);
+                int[][] frameData = new int[mips][];
+                for (int mip = 0; mip < mips; ++mip) {
+                    frameData[mip] = new int[frame1[mip].length];
+                    interpolateFrame(frameData[mip], frame1[mip], frame2[mip], weight);
+                }
+                frames.add(frameData);
+            }
+        }
+
+        interpolatedSlots = slots;
+        return frames;
     }
 
     private static void uploadTextureMaxMips(int maxMips, int[][] data, int width, int height, int originX, int originY, boolean linearFiltering, boolean clamped, boolean mipFiltering) {
@@ -36,13 +36,13 @@ import net.minecraftforge.common.model.IModelState;
 import net.minecraftforge.common.model.TRSRTransformation;
 import net.minecraftforge.fml.relauncher.ReflectionHelper;
 import org.apache.commons.lang3.tuple.Pair;
+import pl.asie.foamfix.shared.FoamFixShared;
 import pl.asie.foamfix.util.MethodHandleHelper;
 
 import javax.annotation.Nullable;
 import javax.vecmath.Matrix4f;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
-import java.lang.ref.SoftReference;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -81,6 +81,14 @@ public class FoamyItemLayerModel implements IModel {
         OVERRIDES_GET = handle;
     }
 
+    private static List<BakedQuad> getQuadsForSprite(int tint, TextureAtlasSprite sprite, VertexFormat format, Optional<TRSRTransformation> transform) {
+        if (FoamFixShared.config.clFastItemLayerQuads) {
+            return ItemLayerQuadBuilder.getQuadsForSprite(tint, sprite, format, transform);
+        } else {
+            return ItemLayerModel.getQuadsForSprite(tint, sprite, format, transform);
+        }
+    }
+
     public static class Static3DItemModel implements IBakedModel {
         private final ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> transforms;
         private final VertexFormat format;
@@ -89,8 +97,6 @@ public class FoamyItemLayerModel implements IModel {
         private final List<TextureAtlasSprite> textures;
         private final Optional<TRSRTransformation> transform;
 
-        private SoftReference<List<BakedQuad>> quadsSoft = null;
-
         public Static3DItemModel(ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> transforms,
                                  VertexFormat format, TextureAtlasSprite particle, ItemOverrideList overrides,
                                  List<TextureAtlasSprite> textures, Optional<TRSRTransformation> transform) {
@@ -112,18 +118,18 @@ public class FoamyItemLayerModel implements IModel {
         @Override
         @SuppressWarnings("unchecked")
         public List<BakedQuad> getQuads(@Nullable IBlockState state, @Nullable EnumFacing side, long rand) {
-            if (quadsSoft == null || quadsSoft.get() == null) {
-                ImmutableList.Builder<BakedQuad> builder = new ImmutableList.Builder<>();
+            return side == null ? ItemQuadCache.INSTANCE.get(this, this::buildQuads) : Collections.EMPTY_LIST;
+        }
 
-                for (int i = 0; i < textures.size(); i++) {
-                    TextureAtlasSprite sprite = textures.get(i);
-                    builder.addAll(ItemLayerModel.getQuadsForSprite(i, sprite, format, transform));
-                }
+        private List<BakedQuad> buildQuads() {
+            ImmutableList.Builder<BakedQuad> builder = new ImmutableList.Builder<>();
 
-                quadsSoft = new SoftReference<>(builder.build());
+            for (int i = 0; i < textures.size(); i++) {
+                TextureAtlasSprite sprite = textures.get(i);
+                builder.addAll(getQuadsForSprite(i, sprite, format, transform));
             }
 
-            return side == null ? quadsSoft.get() : Collections.EMPTY_LIST;
+            return builder.build();
         }
 
         @Override
@@ -154,7 +160,6 @@ public class FoamyItemLayerModel implements IModel {
 
     public static class Dynamic3DItemModel implements IBakedModel {
         private final DynamicItemModel parent;
-        private SoftReference<List<BakedQuad>> quadsSoft = null;
 
         public Dynamic3DItemModel(DynamicItemModel parent) {
             this.parent = parent;
@@ -174,18 +179,18 @@ public class FoamyItemLayerModel implements IModel {
         @Override
         @SuppressWarnings("unchecked")
         public List<BakedQuad> getQuads(@Nullable IBlockState state, @Nullable EnumFacing side, long rand) {
-            if (quadsSoft == null || quadsSoft.get() == null) {
-                ImmutableList.Builder<BakedQuad> builder = new ImmutableList.Builder<>();
+            return side == null ? ItemQuadCache.INSTANCE.get(this, this::buildQuads) : Collections.EMPTY_LIST;
+        }
 
-                for (int i = 0; i < parent.textures.size(); i++) {
-                    TextureAtlasSprite sprite = parent.textures.get(i);
-                    builder.addAll(ItemLayerModel.getQuadsForSprite(i, sprite, parent.format, parent.transform));
-                }
+        private List<BakedQuad> buildQuads() {
+            ImmutableList.Builder<BakedQuad> builder = new ImmutableList.Builder<>();
 
-                quadsSoft = new SoftReference<>(builder.build());
+            for (int i = 0; i < parent.textures.size(); i++) {
+                TextureAtlasSprite sprite = parent.textures.get(i);
+                builder.addAll(getQuadsForSprite(i, sprite, parent.format, parent.transform));
             }
 
-            return side == null ? quadsSoft.get() : Collections.EMPTY_LIST;
+            return builder.build();
         }
 
         @Override
@@ -306,11 +311,11 @@ public class FoamyItemLayerModel implements IModel {
     }
 
     public static IBakedModel bakeStatic(ItemLayerModel parent, final IModelState state, final VertexFormat format, final Function<ResourceLocation, TextureAtlasSprite> bakedTextureGetter) {
-        ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> map = PerspectiveMapWrapper.getTransforms(state);
+        ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> map = TransformInterner.intern(PerspectiveMapWrapper.getTransforms(state));
         TRSRTransformation guiTransform = map.get(ItemCameraTransforms.TransformType.GUI);
 
         ImmutableList.Builder<BakedQuad> builder = ImmutableList.builder();
-        Optional<TRSRTransformation> transform = state.apply(Optional.empty());
+        Optional<TRSRTransformation> transform = TransformInterner.intern(state.apply(Optional.empty()));
         List<ResourceLocation> textures = (List<ResourceLocation>) parent.getTextures();
         ImmutableList.Builder<TextureAtlasSprite> textureAtlas = new ImmutableList.Builder<>();
         TextureAtlasSprite particle = bakedTextureGetter.apply(textures.isEmpty() ? MISSINGNO : textures.get(0));
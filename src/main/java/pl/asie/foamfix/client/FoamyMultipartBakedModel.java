@@ -25,6 +25,11 @@ import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.renderer.block.model.*;
 import net.minecraft.client.renderer.texture.TextureAtlasSprite;
 import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.MathHelper;
+import net.minecraftforge.common.property.IExtendedBlockState;
+import pl.asie.foamfix.common.FoamyBlockState;
+import pl.asie.foamfix.common.PropertyValueMapper;
+import pl.asie.foamfix.shared.FoamFixShared;
 import pl.asie.foamfix.util.MethodHandleHelper;
 
 import javax.annotation.Nullable;
@@ -37,10 +42,48 @@ import java.util.Map;
 public class FoamyMultipartBakedModel implements IBakedModel {
     private static final MethodHandle SELECTORS_GETTER = MethodHandleHelper.findFieldGetter(MultipartBakedModel.class, "selectors", "field_188626_f");
 
+    private static final int SIDE_COUNT = EnumFacing.VALUES.length + 1;
+
     @SuppressWarnings("Guava")
     public final Predicate[] predicates;
     public final IBakedModel[] models;
 
+    // Direct-mapped (packed state value, side) -> quads cache; only used for FoamyBlockStates.
+    // Deduplicated models are shared between blocks, so each entry remembers the exact state it was built for.
+    private final boolean[] randDependent;
+    private final int cacheMask;
+    private volatile QuadCacheEntry[] cache;
+
+    // Precomputed selector match masks for every packed value of one mapper - usually the block the model was baked for.
+    private final int selectorTableMaxStates;
+    private volatile SelectorTable selectorTable;
+
+    private static final class SelectorTable {
+        private final PropertyValueMapper mapper;
+        // null if the mapper has too many states
+        private final long[] rows;
+
+        private SelectorTable(PropertyValueMapper mapper, long[] rows) {
+            this.mapper = mapper;
+            this.rows = rows;
+        }
+    }
+
+    private static final class QuadCacheEntry {
+        private final IBlockState state;
+        private final int side;
+        private final long mask;
+        // null if any matched submodel depends on rand - the quads are then rebuilt from the mask
+        private final List<BakedQuad> quads;
+
+        private QuadCacheEntry(IBlockState state, int side, long mask, List<BakedQuad> quads) {
+            this.state = state;
+            this.side = side;
+            this.mask = mask;
+            this.quads = quads;
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public FoamyMultipartBakedModel(MultipartBakedModel parent) {
         try {
@@ -57,21 +100,187 @@ public class FoamyMultipartBakedModel implements IBakedModel {
         } catch (Throwable t) {
             throw new RuntimeException(t);
         }
+
+        randDependent = new boolean[models.length];
+        for (int i = 0; i < models.length; i++) {
+            // WeightedBakedModel and most custom models pick their quads based on rand (or worse)
+            randDependent[i] = models[i].getClass() != SimpleBakedModel.class;
+        }
+
+        int cacheSize = FoamFixShared.config.clMultipartQuadCacheSize;
+        cacheMask = (cacheSize > 0 && predicates.length <= 64) ? MathHelper.smallestEncompassingPowerOfTwo(cacheSize) - 1 : -1;
+        selectorTableMaxStates = predicates.length <= 64 ? FoamFixShared.config.clMultipartSelectorTableMaxStates : 0;
+    }
+
+    /**
+     * Precomputes the selector table for the given block's states, if it has few enough of them.
+     * Otherwise, the table is created for the first FoamyBlockState the model is asked to render.
+     *
+     * @return Whether a table is now present for the mapper.
+     */
+    public boolean buildSelectorTable(PropertyValueMapper mapper) {
+        if (selectorTableMaxStates <= 0) {
+            return false;
+        }
+
+        SelectorTable table = selectorTable;
+        if (table == null) {
+            table = selectorTable = createSelectorTable(mapper);
+        }
+        return table.mapper == mapper && table.rows != null;
+    }
+
+    private SelectorTable createSelectorTable(PropertyValueMapper mapper) {
+        int count = mapper.getPackedValueCount();
+        if (count > selectorTableMaxStates) {
+            return new SelectorTable(mapper, null);
+        }
+
+        long[] rows = new long[count];
+        for (int i = 0; i < count; i++) {
+            IBlockState state = mapper.getPropertyByValue(i);
+            if (state != null) {
+                rows[i] = computeSelectorMask(state);
+            }
+        }
+        return new SelectorTable(mapper, rows);
+    }
+
+    private long computeSelectorMask(IBlockState state) {
+        long mask = 0;
+        for (int i = 0; i < predicates.length; i++) {
+            if (predicates[i].apply(state)) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
+    // only valid if predicates.length <= 64
+    private long getSelectorMask(IBlockState state) {
+        if (state instanceof FoamyBlockState && selectorTableMaxStates > 0) {
+            FoamyBlockState foamyState = (FoamyBlockState) state;
+            SelectorTable table = selectorTable;
+            if (table == null) {
+                table = selectorTable = createSelectorTable(foamyState.getMapper());
+            }
+            if (table.mapper == foamyState.getMapper() && table.rows != null) {
+                return table.rows[foamyState.getPackedValue()];
+            }
+        }
+
+        return computeSelectorMask(state);
+    }
+
+    public int getSelectorTableStateCount() {
+        SelectorTable table = selectorTable;
+        return table != null && table.rows != null ? table.rows.length : 0;
+    }
+
+    /**
+     * For debugging: the time taken to match all selectors against every state of the table's mapper, passes times.
+     */
+    public long timeSelectorMatching(boolean useTable, int passes) {
+        SelectorTable table = selectorTable;
+        if (table == null || table.rows == null) {
+            return 0;
+        }
+
+        long time = System.nanoTime();
+        for (int p = 0; p < passes; p++) {
+            for (int i = 0; i < table.rows.length; i++) {
+                IBlockState state = table.mapper.getPropertyByValue(i);
+                if (state != null) {
+                    if (useTable) {
+                        getSelectorMask(state);
+                    } else {
+                        computeSelectorMask(state);
+                    }
+                }
+            }
+        }
+        return System.nanoTime() - time;
+    }
+
+    private static IBlockState getCacheKey(IBlockState state) {
+        if (state instanceof IExtendedBlockState) {
+            // only the listed properties can be seen by the predicates and by SimpleBakedModels
+            state = ((IExtendedBlockState) state).getClean();
+        }
+        return state instanceof FoamyBlockState ? state : null;
+    }
+
+    private List<BakedQuad> getQuadsUncached(IBlockState state, @Nullable EnumFacing side, long rand) {
+        if (predicates.length <= 64) {
+            return getQuads(getSelectorMask(state), state, side, rand);
+        }
+
+        List<BakedQuad> list = new ArrayList<>(predicates.length);
+        for (int i = 0; i < predicates.length; i++) {
+            if (predicates[i].apply(state)) {
+                list.addAll(models[i].getQuads(state, side, rand++));
+            }
+        }
+        return list;
+    }
+
+    private List<BakedQuad> getQuads(long mask, IBlockState state, @Nullable EnumFacing side, long rand) {
+        List<BakedQuad> list = new ArrayList<>(Long.bitCount(mask) * 2);
+        while (mask != 0) {
+            int i = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            list.addAll(models[i].getQuads(state, side, rand++));
+        }
+        return list;
+    }
+
+    private QuadCacheEntry createCacheEntry(IBlockState key, IBlockState state, int side, EnumFacing facing) {
+        long mask = getSelectorMask(state);
+        boolean dependsOnRand = false;
+        for (int i = 0; i < predicates.length; i++) {
+            if ((mask & (1L << i)) != 0) {
+                dependsOnRand |= randDependent[i];
+            }
+        }
+
+        List<BakedQuad> quads = null;
+        if (!dependsOnRand) {
+            ImmutableList.Builder<BakedQuad> builder = ImmutableList.builder();
+            for (int i = 0; i < predicates.length; i++) {
+                if ((mask & (1L << i)) != 0) {
+                    builder.addAll(models[i].getQuads(state, facing, 0));
+                }
+            }
+            quads = builder.build();
+        }
+
+        return new QuadCacheEntry(key, side, mask, quads);
     }
 
     @SuppressWarnings("unchecked")
     public List<BakedQuad> getQuads(@Nullable IBlockState state, @Nullable EnumFacing side, long rand) {
         if (state == null) {
             return ImmutableList.of();
-        } else {
-            List<BakedQuad> list = new ArrayList<>(predicates.length);
-            for (int i = 0; i < predicates.length; i++) {
-                if (predicates[i].apply(state)) {
-                    list.addAll(models[i].getQuads(state, side, rand++));
-                }
-            }
-            return list;
         }
+
+        IBlockState key = cacheMask >= 0 ? getCacheKey(state) : null;
+        if (key == null) {
+            return getQuadsUncached(state, side, rand);
+        }
+
+        QuadCacheEntry[] cache = this.cache;
+        if (cache == null) {
+            cache = this.cache = new QuadCacheEntry[cacheMask + 1];
+        }
+
+        int sideIdx = side == null ? EnumFacing.VALUES.length : side.ordinal();
+        int slot = (((FoamyBlockState) key).getPackedValue() * SIDE_COUNT + sideIdx) & cacheMask;
+        QuadCacheEntry entry = cache[slot];
+        if (entry == null || entry.state != key || entry.side != sideIdx) {
+            entry = cache[slot] = createCacheEntry(key, state, sideIdx, side);
+        }
+
+        return entry.quads != null ? entry.quads : getQuads(entry.mask, state, side, rand);
     }
 
     public boolean isAmbientOcclusion() {
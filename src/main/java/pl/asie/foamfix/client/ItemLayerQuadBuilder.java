@@ -0,0 +1,333 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.client;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.client.renderer.vertex.VertexFormat;
+import net.minecraft.client.renderer.vertex.VertexFormatElement;
+import net.minecraft.util.EnumFacing;
+import net.minecraftforge.client.model.pipeline.LightUtil;
+import net.minecraftforge.common.model.TRSRTransformation;
+
+import javax.vecmath.Matrix4f;
+import javax.vecmath.Vector4f;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * A reimplementation of ItemLayerModel.getQuadsForSprite, producing the same
+ * quads and vertex data (including Forge's quirks - normals are not transformed,
+ * and UV elements other than the first get the normal written into them):
+ * - the opacity of each frame row is collected into a bitmask, and the four
+ *   edge masks are derived from it with shifts instead of per-pixel checks,
+ * - edge runs are merged the same way Forge does (whole rows for fully
+ *   opaque sprites, contiguous runs otherwise),
+ * - vertex data is packed directly into each quad's int[] rather than going
+ *   through UnpackedBakedQuad, which also keeps the unpacked floats around.
+ */
+public final class ItemLayerQuadBuilder {
+    private static final EnumFacing[] HORIZONTALS = { EnumFacing.UP, EnumFacing.DOWN };
+    private static final EnumFacing[] VERTICALS = { EnumFacing.WEST, EnumFacing.EAST };
+    // alpha / 255f <= 0.1f is transparent in Forge
+    private static final int ALPHA_THRESHOLD = 25;
+
+    private final VertexFormat format;
+    private final TextureAtlasSprite sprite;
+    private final int tint;
+    private final Matrix4f matrix;
+    private final float[] data = new float[4];
+
+    private ItemLayerQuadBuilder(VertexFormat format, TextureAtlasSprite sprite, int tint, Optional<TRSRTransformation> transform) {
+        this.format = format;
+        this.sprite = sprite;
+        this.tint = tint;
+
+        if (transform.isPresent() && !transform.get().isIdentity()) {
+            this.matrix = transform.get().getMatrix();
+        } else {
+            this.matrix = null;
+        }
+    }
+
+    public static ImmutableList<BakedQuad> getQuadsForSprite(int tint, TextureAtlasSprite sprite, VertexFormat format, Optional<TRSRTransformation> transform) {
+        return new ItemLayerQuadBuilder(format, sprite, tint, transform).build();
+    }
+
+    private static boolean get(long[] bits, int offset, int index) {
+        return (bits[offset + (index >> 6)] & (1L << index)) != 0;
+    }
+
+    private static int nextSetBit(long[] bits, int offset, int words, int from) {
+        int word = from >> 6;
+        if (word >= words) {
+            return -1;
+        }
+
+        long w = bits[offset + word] & (-1L << from);
+        while (true) {
+            if (w != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(w);
+            }
+            if (++word >= words) {
+                return -1;
+            }
+            w = bits[offset + word];
+        }
+    }
+
+    private static int nextClearBit(long[] bits, int offset, int words, int from) {
+        int word = from >> 6;
+        if (word >= words) {
+            return from;
+        }
+
+        long w = ~bits[offset + word] & (-1L << from);
+        while (true) {
+            if (w != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(w);
+            }
+            if (++word >= words) {
+                return words << 6;
+            }
+            w = ~bits[offset + word];
+        }
+    }
+
+    private static int previousSetBit(long[] bits, int offset, int words) {
+        for (int word = words - 1; word >= 0; word--) {
+            long w = bits[offset + word];
+            if (w != 0) {
+                return (word << 6) + 63 - Long.numberOfLeadingZeros(w);
+            }
+        }
+        return -1;
+    }
+
+    private ImmutableList<BakedQuad> build() {
+        int width = sprite.getIconWidth();
+        int height = sprite.getIconHeight();
+        int words = (width + 63) >> 6;
+
+        // rows are bottom-up, as in ItemLayerModel
+        long[] opaque = new long[height * words];
+        long[] up = new long[height * words];
+        long[] down = new long[height * words];
+        long[] west = new long[height * words];
+        long[] east = new long[height * words];
+        boolean translucent = false;
+
+        for (int f = 0; f < sprite.getFrameCount(); f++) {
+            int[] pixels = sprite.getFrameTextureData(f)[0];
+            Arrays.fill(opaque, 0);
+
+            for (int v = 0; v < height; v++) {
+                int pixelOffset = (height - 1 - v) * width;
+                int rowOffset = v * words;
+                for (int u = 0; u < width; u++) {
+                    int alpha = pixels[pixelOffset + u] >>> 24;
+                    if (alpha > ALPHA_THRESHOLD) {
+                        opaque[rowOffset + (u >> 6)] |= 1L << u;
+                        if (alpha < 255) {
+                            translucent = true;
+                        }
+                    }
+                }
+            }
+
+            for (int v = 0; v < height; v++) {
+                int row = v * words;
+                for (int i = 0; i < words; i++) {
+                    long o = opaque[row + i];
+                    long left = (o << 1) | (i > 0 ? opaque[row + i - 1] >>> 63 : 0);
+                    long right = (o >>> 1) | (i < words - 1 ? opaque[row + i + 1] << 63 : 0);
+                    long below = v > 0 ? opaque[row - words + i] : 0;
+                    long above = v < height - 1 ? opaque[row + words + i] : 0;
+
+                    west[row + i] |= o & ~left;
+                    east[row + i] |= o & ~right;
+                    up[row + i] |= o & ~below;
+                    down[row + i] |= o & ~above;
+                }
+            }
+        }
+
+        ImmutableList.Builder<BakedQuad> builder = ImmutableList.builder();
+
+        // horizontal quads - runs along u
+        for (EnumFacing facing : HORIZONTALS) {
+            long[] faces = facing == EnumFacing.UP ? up : down;
+            int off = facing == EnumFacing.DOWN ? 1 : 0;
+
+            for (int v = 0; v < height; v++) {
+                int row = v * words;
+                int start = nextSetBit(faces, row, words, 0);
+                if (start < 0) {
+                    continue;
+                }
+
+                if (!translucent) {
+                    int end = previousSetBit(faces, row, words) + 1;
+                    builder.add(buildSideQuad(facing, start, v + off, end - start));
+                } else {
+                    while (start >= 0) {
+                        int end = Math.min(nextClearBit(faces, row, words, start), width);
+                        builder.add(buildSideQuad(facing, start, v + off, end - start));
+                        start = end < width ? nextSetBit(faces, row, words, end) : -1;
+                    }
+                }
+            }
+        }
+
+        // vertical quads - runs along v
+        for (EnumFacing facing : VERTICALS) {
+            long[] faces = facing == EnumFacing.WEST ? west : east;
+            int off = facing == EnumFacing.EAST ? 1 : 0;
+
+            for (int u = 0; u < width; u++) {
+                int start = -1, end = -1;
+                for (int v = 0; v < height; v++) {
+                    boolean face = get(faces, v * words, u);
+                    if (face) {
+                        if (start < 0) {
+                            start = v;
+                        }
+                        end = v + 1;
+                    } else if (translucent && start >= 0) {
+                        builder.add(buildSideQuad(facing, u + off, start, v - start));
+                        start = -1;
+                    }
+                }
+
+                if (start >= 0) {
+                    builder.add(buildSideQuad(facing, u + off, start, end - start));
+                }
+            }
+        }
+
+        // front and back
+        builder.add(buildQuad(EnumFacing.NORTH,
+                0, 0, 7.5f / 16f, sprite.getMinU(), sprite.getMaxV(),
+                0, 1, 7.5f / 16f, sprite.getMinU(), sprite.getMinV(),
+                1, 1, 7.5f / 16f, sprite.getMaxU(), sprite.getMinV(),
+                1, 0, 7.5f / 16f, sprite.getMaxU(), sprite.getMaxV()
+        ));
+        builder.add(buildQuad(EnumFacing.SOUTH,
+                0, 0, 8.5f / 16f, sprite.getMinU(), sprite.getMaxV(),
+                1, 0, 8.5f / 16f, sprite.getMaxU(), sprite.getMaxV(),
+                1, 1, 8.5f / 16f, sprite.getMaxU(), sprite.getMinV(),
+                0, 1, 8.5f / 16f, sprite.getMinU(), sprite.getMinV()
+        ));
+
+        return builder.build();
+    }
+
+    private BakedQuad buildSideQuad(EnumFacing side, int u, int v, int size) {
+        final float eps = 1e-2f;
+
+        int width = sprite.getIconWidth();
+        int height = sprite.getIconHeight();
+
+        float x0 = (float) u / width;
+        float y0 = (float) v / height;
+        float x1 = x0, y1 = y0;
+        float z0 = 7.5f / 16f, z1 = 8.5f / 16f;
+
+        switch (side) {
+            case WEST:
+                z0 = 8.5f / 16f;
+                z1 = 7.5f / 16f;
+            case EAST:
+                y1 = (float) (v + size) / height;
+                break;
+            case DOWN:
+                z0 = 8.5f / 16f;
+                z1 = 7.5f / 16f;
+            case UP:
+                x1 = (float) (u + size) / width;
+                break;
+            default:
+                throw new IllegalArgumentException("can't handle z-oriented side");
+        }
+
+        float dx = side.getDirectionVec().getX() * eps / width;
+        float dy = side.getDirectionVec().getY() * eps / height;
+
+        float u0 = 16f * (x0 - dx);
+        float u1 = 16f * (x1 - dx);
+        float v0 = 16f * (1f - y0 - dy);
+        float v1 = 16f * (1f - y1 - dy);
+
+        // getOpposite is related to the swapping of V direction
+        EnumFacing face = side.getAxis() == EnumFacing.Axis.Y ? side.getOpposite() : side;
+
+        return buildQuad(face,
+                x0, y0, z0, sprite.getInterpolatedU(u0), sprite.getInterpolatedV(v0),
+                x1, y1, z0, sprite.getInterpolatedU(u1), sprite.getInterpolatedV(v1),
+                x1, y1, z1, sprite.getInterpolatedU(u1), sprite.getInterpolatedV(v1),
+                x0, y0, z1, sprite.getInterpolatedU(u0), sprite.getInterpolatedV(v0)
+        );
+    }
+
+    private BakedQuad buildQuad(EnumFacing side,
+                                float x0, float y0, float z0, float u0, float v0,
+                                float x1, float y1, float z1, float u1, float v1,
+                                float x2, float y2, float z2, float u2, float v2,
+                                float x3, float y3, float z3, float u3, float v3) {
+        int[] vertexData = new int[format.getIntegerSize() * 4];
+        putVertex(vertexData, 0, side, x0, y0, z0, u0, v0);
+        putVertex(vertexData, 1, side, x1, y1, z1, u1, v1);
+        putVertex(vertexData, 2, side, x2, y2, z2, u2, v2);
+        putVertex(vertexData, 3, side, x3, y3, z3, u3, v3);
+        return new BakedQuad(vertexData, tint, side, sprite, true, format);
+    }
+
+    private void putVertex(int[] to, int vertex, EnumFacing side, float x, float y, float z, float u, float v) {
+        for (int e = 0; e < format.getElementCount(); e++) {
+            VertexFormatElement element = format.getElement(e);
+            switch (element.getUsage()) {
+                case POSITION:
+                    if (matrix != null) {
+                        Vector4f pos = new Vector4f(x, y, z, 1f);
+                        matrix.transform(pos);
+                        data[0] = pos.x; data[1] = pos.y; data[2] = pos.z; data[3] = pos.w;
+                    } else {
+                        data[0] = x; data[1] = y; data[2] = z; data[3] = 1f;
+                    }
+                    break;
+                case COLOR:
+                    data[0] = data[1] = data[2] = data[3] = 1f;
+                    break;
+                case UV:
+                    if (element.getIndex() == 0) {
+                        data[0] = u; data[1] = v; data[2] = 0f; data[3] = 1f;
+                        break;
+                    }
+                    // fall through - as in Forge
+                case NORMAL:
+                    data[0] = side.getXOffset(); data[1] = side.getYOffset(); data[2] = side.getZOffset(); data[3] = 0f;
+                    break;
+                default:
+                    continue;
+            }
+            LightUtil.pack(data, to, format, vertex, e);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.client;
+
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import pl.asie.foamfix.shared.FoamFixShared;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A shared LRU cache for lazily generated item model quads, bounded by the
+ * (approximate) memory used by the cached quads. Each key is computed by at
+ * most one thread at a time; concurrent callers wait for its result.
+ */
+public final class ItemQuadCache {
+    public static final ItemQuadCache INSTANCE = new ItemQuadCache();
+
+    // object header + fields of a BakedQuad, plus the int[] header
+    private static final int QUAD_OVERHEAD = 48;
+
+    private static final class Entry {
+        private final List<BakedQuad> quads;
+        private final long size;
+
+        private Entry(List<BakedQuad> quads, long size) {
+            this.quads = quads;
+            this.size = size;
+        }
+    }
+
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<Object, FutureTask<List<BakedQuad>>> pending = new ConcurrentHashMap<>();
+    private long size, hits, misses, evictions;
+    private volatile int generation;
+    private final ThreadLocal<Integer> pinnedGeneration = new ThreadLocal<>();
+    private Consumer<Object> accessListener;
+
+    private ItemQuadCache() {
+
+    }
+
+    public static long getSize(List<BakedQuad> quads) {
+        long size = 0;
+        for (BakedQuad quad : quads) {
+            size += QUAD_OVERHEAD + quad.getVertexData().length * 4L;
+        }
+        return size;
+    }
+
+    private long getBudget() {
+        return FoamFixShared.config.clItemQuadCacheSize * 1024L;
+    }
+
+    private List<BakedQuad> getCached(Object key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            return entry != null ? entry.quads : null;
+        }
+    }
+
+    private void put(Object key, List<BakedQuad> quads, int generation) {
+        long budget = getBudget();
+        long entrySize = getSize(quads);
+        if (entrySize > budget) {
+            return;
+        }
+
+        synchronized (entries) {
+            // built from a model that was dropped by clear() in the meantime
+            if (generation != this.generation) {
+                return;
+            }
+
+            Entry old = entries.put(key, new Entry(quads, entrySize));
+            if (old != null) {
+                size -= old.size;
+            }
+            size += entrySize;
+
+            Iterator<Entry> it = entries.values().iterator();
+            while (size > budget && it.hasNext()) {
+                size -= it.next().size;
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Stores the quads unless the key is already present - used for pre-built lists.
+     */
+    public void putIfAbsent(Object key, List<BakedQuad> quads) {
+        if (getBudget() > 0 && getCached(key) == null) {
+            put(key, quads, generation);
+        }
+    }
+
+    public boolean contains(Object key) {
+        return getCached(key) != null;
+    }
+
+    public void setAccessListener(Consumer<Object> accessListener) {
+        this.accessListener = accessListener;
+    }
+
+    public List<BakedQuad> get(Object key, Supplier<List<BakedQuad>> loader) {
+        if (accessListener != null) {
+            accessListener.accept(key);
+        }
+
+        if (getBudget() <= 0) {
+            return loader.get();
+        }
+
+        Integer pinned = pinnedGeneration.get();
+        int generation = pinned != null ? pinned : this.generation;
+        List<BakedQuad> quads = getCached(key);
+        if (quads != null) {
+            synchronized (entries) {
+                hits++;
+            }
+            return quads;
+        }
+
+        FutureTask<List<BakedQuad>> task = new FutureTask<>(loader::get);
+        FutureTask<List<BakedQuad>> existing = pending.putIfAbsent(key, task);
+        try {
+            if (existing != null) {
+                // someone else is already building this one
+                synchronized (entries) {
+                    hits++;
+                }
+                return existing.get();
+            }
+
+            // it might have been finished between our first check and putIfAbsent
+            quads = getCached(key);
+            if (quads != null) {
+                synchronized (entries) {
+                    hits++;
+                }
+                return quads;
+            }
+
+            synchronized (entries) {
+                misses++;
+            }
+            task.run();
+            quads = task.get();
+            put(key, quads, generation);
+            return quads;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return loader.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } finally {
+            if (existing == null) {
+                pending.remove(key, task);
+            }
+        }
+    }
+
+    /**
+     * Changes on every clear(); quads built before it are not stored.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Runs the given code with quads stored only if clear() has not been called
+     * since the given generation was read - for work queued from another thread.
+     */
+    public void runInGeneration(int generation, Runnable runnable) {
+        pinnedGeneration.set(generation);
+        try {
+            runnable.run();
+        } finally {
+            pinnedGeneration.remove();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    public String getStatistics() {
+        synchronized (entries) {
+            long total = hits + misses;
+            return String.format("Item quads: %d/%d KB, %d entries, %.1f%% hits (%d/%d), %d evicted",
+                    size / 1024, getBudget() / 1024, entries.size(), total > 0 ? hits * 100.0 / total : 0.0, hits, total, evictions);
+        }
+    }
+}
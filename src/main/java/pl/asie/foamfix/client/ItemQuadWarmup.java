@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.client;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.ItemModelMesher;
+import net.minecraft.client.renderer.block.model.IBakedModel;
+import net.minecraft.creativetab.CreativeTabs;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.NonNullList;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+import net.minecraftforge.fml.common.registry.ForgeRegistries;
+import pl.asie.foamfix.FoamFix;
+import pl.asie.foamfix.shared.FoamFixShared;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds the 3D quads of dynamic item models on a background thread after
+ * each model bake, so that the first drop/hold of an item doesn't stutter.
+ *
+ * Items seen by the render path are written to foamfixItemUsage.txt on exit,
+ * most used first, and warmed up first in the next session; the rest of the
+ * budget goes to creative tab contents. Finding the models has to happen on
+ * the client thread, so it is spread over client ticks instead of done at once.
+ */
+public final class ItemQuadWarmup {
+    public static final ItemQuadWarmup INSTANCE = new ItemQuadWarmup();
+    private static final File USAGE_FILE = new File("foamfixItemUsage.txt");
+    private static final long TICK_BUDGET_NANOS = 2000000L;
+
+    private volatile Thread thread;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "FoamFix item quad warm-up");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return this.thread = thread;
+    });
+
+    private final Map<Object, String> modelNames = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> usage = new ConcurrentHashMap<>();
+    private boolean pending;
+
+    // client thread only - the state of the current scan
+    private Iterator<Item> items;
+    private final Deque<ItemStack> stacks = new ArrayDeque<>();
+    private final Set<String> scannedNames = new HashSet<>();
+    private final NonNullList<ItemStack> subItems = NonNullList.create();
+    private int warmedUp, generation;
+
+    private ItemQuadWarmup() {
+
+    }
+
+    public void register() {
+        ItemQuadCache.INSTANCE.setAccessListener(key -> {
+            String name = modelNames.get(key);
+            if (name != null && Thread.currentThread() != thread) {
+                usage.computeIfAbsent(name, k -> new LongAdder()).increment();
+            }
+        });
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::saveUsage, "FoamFix item usage saver"));
+    }
+
+    public void onModelBake() {
+        // queued warm-ups notice the new cache generation and stop on their own
+        items = null;
+        stacks.clear();
+        scannedNames.clear();
+
+        // the item model mesher's cache is only rebuilt after ModelBakeEvent
+        pending = true;
+    }
+
+    @SubscribeEvent
+    public void onClientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            if (pending) {
+                pending = false;
+                start();
+            }
+
+            if (items != null) {
+                scan(System.nanoTime() + TICK_BUDGET_NANOS);
+            }
+        }
+    }
+
+    private static String getName(ItemStack stack) {
+        ResourceLocation location = stack.getItem().getRegistryName();
+        return location + "@" + stack.getMetadata();
+    }
+
+    private static ItemStack fromName(String name) {
+        int split = name.lastIndexOf('@');
+        if (split < 0) {
+            return ItemStack.EMPTY;
+        }
+
+        try {
+            Item item = ForgeRegistries.ITEMS.getValue(new ResourceLocation(name.substring(0, split)));
+            return item != null ? new ItemStack(item, 1, Integer.parseInt(name.substring(split + 1))) : ItemStack.EMPTY;
+        } catch (NumberFormatException e) {
+            return ItemStack.EMPTY;
+        }
+    }
+
+    private void start() {
+        // all candidates are named, so that usage can be tracked beyond the warm-up budget
+        modelNames.clear();
+        warmedUp = 0;
+        generation = ItemQuadCache.INSTANCE.getGeneration();
+
+        if (USAGE_FILE.exists()) {
+            try {
+                for (String line : Files.readAllLines(USAGE_FILE.toPath(), StandardCharsets.UTF_8)) {
+                    ItemStack stack = fromName(line.trim());
+                    if (!stack.isEmpty()) {
+                        stacks.add(stack);
+                    }
+                }
+            } catch (Exception e) {
+                FoamFix.getLogger().warn("Could not read " + USAGE_FILE.getName() + "!", e);
+            }
+        }
+
+        items = ForgeRegistries.ITEMS.iterator();
+    }
+
+    private void scan(long deadline) {
+        int count = FoamFixShared.config.clWarmUpItemQuads;
+        ItemModelMesher mesher = Minecraft.getMinecraft().getRenderItem().getItemModelMesher();
+        List<IBakedModel> models = new ArrayList<>();
+
+        while (System.nanoTime() < deadline) {
+            ItemStack stack = stacks.poll();
+            if (stack != null) {
+                String name = getName(stack);
+                if (!scannedNames.add(name)) {
+                    continue;
+                }
+
+                try {
+                    IBakedModel model = mesher.getItemModel(stack);
+                    model = model.getOverrides().handleItemState(model, stack, null, null);
+                    if ((model instanceof FoamyItemLayerModel.Static3DItemModel || model instanceof FoamyItemLayerModel.Dynamic3DItemModel)
+                            && modelNames.putIfAbsent(model, name) == null && warmedUp < count) {
+                        models.add(model);
+                        warmedUp++;
+                    }
+                } catch (Exception e) {
+                    // skip items whose overrides need a world or entity
+                }
+            } else if (items.hasNext()) {
+                Item item = items.next();
+                try {
+                    subItems.clear();
+                    item.getSubItems(CreativeTabs.SEARCH, subItems);
+                    stacks.addAll(subItems);
+                } catch (Exception e) {
+                    // some mods don't expect to be asked this early
+                }
+            } else {
+                FoamFix.getLogger().info("Queued " + warmedUp + " item models for background warm-up.");
+                items = null;
+                scannedNames.clear();
+                subItems.clear();
+                break;
+            }
+        }
+
+        if (!models.isEmpty()) {
+            submit(models, generation);
+        }
+    }
+
+    private void submit(List<IBakedModel> models, int generation) {
+        executor.submit(() -> {
+            for (IBakedModel model : models) {
+                if (ItemQuadCache.INSTANCE.getGeneration() != generation) {
+                    return;
+                }
+
+                if (!ItemQuadCache.INSTANCE.contains(model)) {
+                    try {
+                        // a clear() during the build keeps the old model's quads out of the cache
+                        ItemQuadCache.INSTANCE.runInGeneration(generation, () -> model.getQuads(null, null, 0));
+                    } catch (Exception e) {
+                        // the render thread will run into it again and report it properly
+                    }
+                }
+            }
+        });
+    }
+
+    private void saveUsage() {
+        if (usage.isEmpty()) {
+            return;
+        }
+
+        try (PrintWriter writer = new PrintWriter(USAGE_FILE, "UTF-8")) {
+            List<Map.Entry<String, Long>> names = new ArrayList<>();
+            for (Map.Entry<String, LongAdder> entry : usage.entrySet()) {
+                names.add(new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().sum()));
+            }
+
+            // most used first, as the warm-up budget is taken from the top
+            names.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+            for (Map.Entry<String, Long> entry : names) {
+                writer.println(entry.getKey());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.client;
+
+import com.google.common.collect.ImmutableSet;
+import net.minecraft.client.renderer.block.model.IBakedModel;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.client.renderer.vertex.VertexFormat;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.client.model.IModel;
+import net.minecraftforge.client.model.ModelLoader;
+import net.minecraftforge.client.model.ModelLoaderRegistry;
+import net.minecraftforge.common.model.IModelState;
+import net.minecraftforge.fml.common.ProgressManager;
+import pl.asie.foamfix.FoamFix;
+import pl.asie.foamfix.shared.FoamFixShared;
+import pl.asie.foamfix.util.MethodHandleHelper;
+
+import java.lang.invoke.MethodHandle;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Bakes the models known to be thread-safe on a fork-join pool before
+ * ModelLoader's own (single-threaded) bake loop runs. The loop is left in
+ * place: a coremod patch redirects its IModel.bake calls here, and they
+ * return the prebaked result if there is one. Registry order, error
+ * handling and the models which are not thread-safe are thus unchanged.
+ */
+public final class ParallelModelBaker {
+    private static final Set<String> THREAD_SAFE_MODELS = ImmutableSet.of(
+            "net.minecraftforge.client.model.ModelLoader$VanillaModelWrapper",
+            "net.minecraftforge.client.model.ItemLayerModel",
+            "net.minecraftforge.client.model.FancyMissingModel"
+    );
+
+    private static final String WEIGHTED_RANDOM_MODEL = "net.minecraftforge.client.model.ModelLoader$WeightedRandomModel";
+    private static final String MULTIPART_MODEL = "net.minecraftforge.client.model.ModelLoader$MultipartModel";
+    private static final MethodHandle STATE_MODELS_GETTER = MethodHandleHelper.findFieldGetter(ModelLoader.class, "stateModels");
+    private static final MethodHandle WEIGHTED_MODELS_GETTER = MethodHandleHelper.findFieldGetter(WEIGHTED_RANDOM_MODEL, "models");
+    private static final MethodHandle MULTIPART_MODELS_GETTER = MethodHandleHelper.findFieldGetter(MULTIPART_MODEL, "partModels");
+
+    private static ModelLoader loader;
+    private static Map<IModel, IBakedModel> prebaked;
+    private static VertexFormat prebakedFormat;
+    private static Function<ResourceLocation, TextureAtlasSprite> prebakedTextureGetter;
+
+    private ParallelModelBaker() {
+
+    }
+
+    private static boolean matches(String[] list, String name) {
+        for (String s : list) {
+            if (name.equals(s) || (s.endsWith(".") && name.startsWith(s))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isThreadSafe(IModel model) {
+        String name = model.getClass().getName();
+        if (matches(FoamFixShared.config.clParallelModelBakingBlacklist, name)) {
+            return false;
+        }
+
+        try {
+            // composite models bake their children directly, so they are only as safe as the children
+            if (WEIGHTED_RANDOM_MODEL.equals(name)) {
+                for (Object child : (Collection<?>) WEIGHTED_MODELS_GETTER.invoke(model)) {
+                    if (!isThreadSafe((IModel) child)) {
+                        return false;
+                    }
+                }
+                return true;
+            } else if (MULTIPART_MODEL.equals(name)) {
+                for (Object child : ((Map<?, ?>) MULTIPART_MODELS_GETTER.invoke(model)).values()) {
+                    if (!isThreadSafe((IModel) child)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        } catch (Throwable t) {
+            return false;
+        }
+
+        return THREAD_SAFE_MODELS.contains(name) || matches(FoamFixShared.config.clParallelModelBakingWhitelist, name);
+    }
+
+    public static void begin(ModelLoader loader) {
+        end();
+        ParallelModelBaker.loader = loader;
+    }
+
+    public static void end() {
+        loader = null;
+        prebaked = null;
+        prebakedFormat = null;
+        prebakedTextureGetter = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void prebake(VertexFormat format, Function<ResourceLocation, TextureAtlasSprite> textureGetter) {
+        prebaked = new IdentityHashMap<>();
+        prebakedFormat = format;
+        prebakedTextureGetter = textureGetter;
+
+        Map<?, IModel> stateModels;
+        try {
+            stateModels = (Map<?, IModel>) STATE_MODELS_GETTER.invoke(loader);
+        } catch (Throwable t) {
+            t.printStackTrace();
+            return;
+        }
+
+        IModel missingModel = ModelLoaderRegistry.getMissingModel();
+        Set<IModel> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<IModel> models = new ArrayList<>();
+        for (IModel model : stateModels.values()) {
+            if (model != missingModel && seen.add(model) && isThreadSafe(model)) {
+                models.add(model);
+            }
+        }
+
+        if (models.isEmpty()) {
+            return;
+        }
+
+        IBakedModel[] results = new IBakedModel[models.size()];
+        AtomicInteger finished = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(FoamFixShared.config.clParallelModelBaking);
+        ProgressManager.ProgressBar bakeBar = ProgressManager.push("FoamFix: baking models", models.size());
+        int stepped = 0;
+
+        try {
+            for (int i = 0; i < results.length; i++) {
+                final int index = i;
+                pool.execute(() -> {
+                    IModel model = models.get(index);
+                    try {
+                        results[index] = model.bake(model.getDefaultState(), format, textureGetter);
+                    } catch (Throwable t) {
+                        // left to ModelLoader, which will report it
+                    }
+                    finished.incrementAndGet();
+                });
+            }
+
+            pool.shutdown();
+            // ProgressManager is not thread-safe, so the bar is advanced from here
+            while (stepped < results.length) {
+                pool.awaitTermination(50, TimeUnit.MILLISECONDS);
+                int done = finished.get();
+                while (stepped < done) {
+                    bakeBar.step(String.format("%d/%d", ++stepped, results.length));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pool.shutdownNow();
+        } finally {
+            while (stepped < results.length) {
+                bakeBar.step(String.format("%d/%d", ++stepped, results.length));
+            }
+            ProgressManager.pop(bakeBar);
+        }
+
+        int count = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) {
+                prebaked.put(models.get(i), results[i]);
+                count++;
+            }
+        }
+
+        FoamFix.getLogger().info("Baked " + count + " of " + seen.size() + " models in parallel.");
+    }
+
+    /**
+     * Replaces IModel.bake calls in ModelLoader.setupModelRegistry.
+     */
+    public static IBakedModel bake(IModel model, IModelState state, VertexFormat format, Function<ResourceLocation, TextureAtlasSprite> textureGetter) {
+        if (loader != null && prebaked == null) {
+            prebake(format, textureGetter);
+        }
+
+        if (prebaked != null && format == prebakedFormat && textureGetter == prebakedTextureGetter && state == model.getDefaultState()) {
+            IBakedModel result = prebaked.remove(model);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        return model.bake(state, format, textureGetter);
+    }
+}
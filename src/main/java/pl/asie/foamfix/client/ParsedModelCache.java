@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.client;
+
+import com.google.common.hash.Hashing;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.block.model.*;
+import net.minecraft.client.resources.IResource;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.ResourceLocation;
+import org.apache.commons.io.IOUtils;
+import pl.asie.foamfix.shared.FoamFixShared;
+
+import javax.vecmath.Vector3f;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps parsed model and blockstate JSON files across resource reloads, so
+ * that files which did not change are not parsed by Gson again. Entries are
+ * keyed by the resource pack name and file location, and are only reused if
+ * the file's length and contents hash still match. Entries not used during
+ * a reload are dropped once it finishes.
+ *
+ * ModelBlocks are mutable - ModelLoader sets their parent, and the model
+ * deduplicator swaps their UV arrays - so the cached instance is never handed
+ * out. Every load gets its own copy of it, with no parent and its own
+ * elements, textures and transforms, same as a freshly parsed one.
+ *
+ * Called from ModelBakery by a coremod patch.
+ */
+public final class ParsedModelCache {
+    private static final class Entry<T> {
+        private final int length;
+        private final long hash;
+        private final T value;
+        private int generation;
+
+        private Entry(byte[] data, long hash, T value) {
+            this.length = data.length;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    private static final Map<String, Entry<ModelBlock>> models = new ConcurrentHashMap<>();
+    private static final Map<String, Entry<ModelBlockDefinition>> definitions = new ConcurrentHashMap<>();
+    private static int generation;
+    private static long hits, misses;
+
+    private ParsedModelCache() {
+
+    }
+
+    private static long hash(byte[] data) {
+        return Hashing.murmur3_128().hashBytes(data).asLong();
+    }
+
+    private static <T> T get(Map<String, Entry<T>> map, String key, byte[] data, long hash) {
+        Entry<T> entry = map.get(key);
+        if (entry != null && entry.length == data.length && entry.hash == hash) {
+            entry.generation = generation;
+            synchronized (ParsedModelCache.class) {
+                hits++;
+            }
+            return entry.value;
+        }
+
+        synchronized (ParsedModelCache.class) {
+            misses++;
+        }
+        return null;
+    }
+
+    private static <T> void put(Map<String, Entry<T>> map, String key, byte[] data, long hash, T value) {
+        Entry<T> entry = new Entry<>(data, hash, value);
+        entry.generation = generation;
+        map.put(key, entry);
+    }
+
+    private static byte[] read(IResource resource) throws IOException {
+        try (InputStream stream = resource.getInputStream()) {
+            return IOUtils.toByteArray(stream);
+        }
+    }
+
+    public static boolean canLoadModel(ResourceLocation location) {
+        return FoamFixShared.config.clCacheParsedModels && !location.getPath().startsWith("builtin/");
+    }
+
+    public static boolean canLoadModelBlockDefinition() {
+        return FoamFixShared.config.clCacheParsedModels;
+    }
+
+    /**
+     * Replaces ModelBakery.loadModel for non-builtin models.
+     */
+    public static ModelBlock loadModel(ResourceLocation location) throws IOException {
+        ResourceLocation fileLocation = new ResourceLocation(location.getNamespace(), "models/" + location.getPath() + ".json");
+        byte[] data;
+        String key;
+
+        try (IResource resource = Minecraft.getMinecraft().getResourceManager().getResource(fileLocation)) {
+            data = read(resource);
+            key = resource.getResourcePackName() + "/" + location;
+        }
+
+        long hash = hash(data);
+        ModelBlock model = get(models, key, data, hash);
+        if (model == null) {
+            model = ModelBlock.deserialize(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8));
+            model.name = location.toString();
+            put(models, key, data, hash, model);
+        }
+
+        return copy(model);
+    }
+
+    private static Vector3f copy(Vector3f vector) {
+        return new Vector3f(vector);
+    }
+
+    private static ItemTransformVec3f copy(ItemTransformVec3f transform) {
+        return transform == ItemTransformVec3f.DEFAULT ? transform
+                : new ItemTransformVec3f(copy(transform.rotation), copy(transform.translation), copy(transform.scale));
+    }
+
+    private static BlockPart copy(BlockPart part) {
+        Map<EnumFacing, BlockPartFace> faces = new EnumMap<>(EnumFacing.class);
+        for (Map.Entry<EnumFacing, BlockPartFace> entry : part.mapFaces.entrySet()) {
+            BlockPartFace face = entry.getValue();
+            BlockFaceUV uv = new BlockFaceUV(face.blockFaceUV.uvs != null ? face.blockFaceUV.uvs.clone() : null, face.blockFaceUV.rotation);
+            faces.put(entry.getKey(), new BlockPartFace(face.cullFace, face.tintIndex, face.texture, uv));
+        }
+
+        BlockPartRotation rotation = part.partRotation != null
+                ? new BlockPartRotation(copy(part.partRotation.origin), part.partRotation.axis, part.partRotation.angle, part.partRotation.rescale)
+                : null;
+        return new BlockPart(copy(part.positionFrom), copy(part.positionTo), faces, rotation, part.shade);
+    }
+
+    /**
+     * Copies a cached, parentless ModelBlock the way Forge's VanillaModelWrapper.retexture
+     * does, but also copying everything an owner could modify in place.
+     */
+    private static ModelBlock copy(ModelBlock model) {
+        List<BlockPart> elements = new ArrayList<>(model.getElements().size());
+        for (BlockPart part : model.getElements()) {
+            elements.add(copy(part));
+        }
+
+        ItemCameraTransforms transforms = model.getAllTransforms();
+        ModelBlock copy = new ModelBlock(model.getParentLocation(), elements, new HashMap<>(model.textures),
+                model.isAmbientOcclusion(), model.isGui3d(),
+                new ItemCameraTransforms(
+                        copy(transforms.thirdperson_left), copy(transforms.thirdperson_right),
+                        copy(transforms.firstperson_left), copy(transforms.firstperson_right),
+                        copy(transforms.head), copy(transforms.gui), copy(transforms.ground), copy(transforms.fixed)),
+                new ArrayList<>(model.getOverrides()));
+        copy.name = model.name;
+        return copy;
+    }
+
+    /**
+     * Replaces ModelBakery.loadModelBlockDefinition for a single resource pack's blockstate file.
+     */
+    public static ModelBlockDefinition loadModelBlockDefinition(ResourceLocation location, IResource resource) {
+        try {
+            byte[] data;
+            try {
+                data = read(resource);
+            } finally {
+                resource.close();
+            }
+
+            String key = resource.getResourcePackName() + "/" + resource.getResourceLocation();
+            long hash = hash(data);
+            ModelBlockDefinition definition = get(definitions, key, data, hash);
+            if (definition == null) {
+                definition = ModelBlockDefinition.parseFromReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8), location);
+                put(definitions, key, data, hash, definition);
+            }
+
+            return definition;
+        } catch (Exception e) {
+            throw new RuntimeException("Encountered an exception when loading model definition of '" + location + "' from: '" + resource.getResourceLocation() + "' in resourcepack: '" + resource.getResourcePackName() + "'", e);
+        }
+    }
+
+    /**
+     * Drops the entries which were not used by the reload that just finished.
+     */
+    public static void onReloadFinished() {
+        int current = generation++;
+        models.values().removeIf((e) -> e.generation != current);
+        definitions.values().removeIf((e) -> e.generation != current);
+    }
+
+    public static String getStatistics() {
+        synchronized (ParsedModelCache.class) {
+            long total = hits + misses;
+            return String.format("Parsed models: %d models, %d blockstates, %.1f%% reused (%d/%d)",
+                    models.size(), definitions.size(), total > 0 ? hits * 100.0 / total : 0.0, hits, total);
+        }
+    }
+}
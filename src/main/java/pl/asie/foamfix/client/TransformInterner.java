@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.client;
+
+import com.google.common.collect.ImmutableMap;
+import net.minecraft.client.renderer.block.model.ItemCameraTransforms;
+import net.minecraftforge.common.model.TRSRTransformation;
+import pl.asie.foamfix.util.DeduplicatingStorageTrove;
+import pl.asie.foamfix.util.HashingStrategies;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Canonical perspective transform maps, interned as models are baked. Most
+ * item models share one of a handful of display transform sets, so this
+ * keeps a single copy of each instead of leaving it to the deduplicator.
+ */
+public final class TransformInterner {
+    // rough retained sizes: a TRSRTransformation with its Matrix4f, and an ImmutableMap entry
+    private static final int TRANSFORM_SIZE = 120;
+    private static final int MAP_ENTRY_SIZE = 32;
+
+    private static final IDeduplicatingStorage<Object> transforms = new DeduplicatingStorageTrove<>(HashingStrategies.GENERIC);
+    private static final IDeduplicatingStorage<Object> maps = new DeduplicatingStorageTrove<>(HashingStrategies.GENERIC);
+    private static int mapsCreated, mapsInterned, transformsCreated, transformsInterned;
+    private static long bytesSaved;
+
+    private TransformInterner() {
+
+    }
+
+    public static synchronized TRSRTransformation intern(TRSRTransformation transform) {
+        if (transform == null) {
+            return null;
+        }
+
+        transformsCreated++;
+        TRSRTransformation result = (TRSRTransformation) transforms.deduplicate(transform);
+        if (result != transform) {
+            transformsInterned++;
+            bytesSaved += TRANSFORM_SIZE;
+        }
+        return result;
+    }
+
+    public static Optional<TRSRTransformation> intern(Optional<TRSRTransformation> transform) {
+        if (transform.isPresent()) {
+            TRSRTransformation result = intern(transform.get());
+            return result != transform.get() ? Optional.of(result) : transform;
+        }
+        return transform;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static synchronized ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> intern(ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> map) {
+        if (map == null) {
+            return null;
+        }
+
+        mapsCreated++;
+        // intern the transforms first - maps which differ in one perspective still share the others
+        ImmutableMap.Builder<ItemCameraTransforms.TransformType, TRSRTransformation> builder = ImmutableMap.builder();
+        boolean changed = false;
+        for (Map.Entry<ItemCameraTransforms.TransformType, TRSRTransformation> entry : map.entrySet()) {
+            TRSRTransformation transform = intern(entry.getValue());
+            changed |= transform != entry.getValue();
+            builder.put(entry.getKey(), transform);
+        }
+
+        ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> canonical = changed ? builder.build() : map;
+        ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> result = (ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation>) maps.deduplicate(canonical);
+        if (result != canonical) {
+            mapsInterned++;
+            bytesSaved += (long) map.size() * MAP_ENTRY_SIZE;
+        }
+        return result;
+    }
+
+    public static synchronized String getStatistics() {
+        return "Interned " + mapsInterned + "/" + mapsCreated + " item transform maps and " + transformsInterned + "/" + transformsCreated + " transforms at bake time, saving ~" + (bytesSaved / 1024) + " KB.";
+    }
+}
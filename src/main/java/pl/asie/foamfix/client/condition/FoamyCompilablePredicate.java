@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.client.condition;
+
+import com.google.common.base.Predicate;
+import net.minecraft.block.state.IBlockState;
+import pl.asie.foamfix.common.FoamyBlockState;
+import pl.asie.foamfix.common.PropertyValueMapper;
+
+import javax.annotation.Nullable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Base class for FoamFix's multipart predicates. For FoamyBlockStates, the
+ * predicate is compiled into a PackedStatePredicate against the state's
+ * mapper; everything else goes through the regular getValue() path.
+ *
+ * Predicates are deduplicated across blocks (north=true is shared by every
+ * fence, pane and wall), so a compiled form is kept per mapper. The table is
+ * copy-on-write, as it only grows during the first few chunk rebuilds.
+ */
+public abstract class FoamyCompilablePredicate implements Predicate<IBlockState> {
+    private static final class Compiled {
+        private final PropertyValueMapper mapper;
+        private final PackedStatePredicate predicate;
+
+        private Compiled(PropertyValueMapper mapper, PackedStatePredicate predicate) {
+            this.mapper = mapper;
+            this.predicate = predicate;
+        }
+    }
+
+    private volatile Compiled last;
+    private volatile Map<PropertyValueMapper, Compiled> compiled = new IdentityHashMap<>();
+
+    /**
+     * @return The compiled predicate, or null if this condition can't be expressed over the mapper's packed values.
+     */
+    @Nullable
+    public abstract PackedStatePredicate compile(PropertyValueMapper mapper);
+
+    protected abstract boolean applyUncompiled(@Nullable IBlockState state);
+
+    /**
+     * @return The compiled predicate for the given mapper, or null if none is available.
+     */
+    @Nullable
+    public final PackedStatePredicate getCompiled(PropertyValueMapper mapper) {
+        Compiled c = last;
+        if (c == null || c.mapper != mapper) {
+            c = compiled.get(mapper);
+            if (c == null) {
+                c = compileAndStore(mapper);
+            }
+            last = c;
+        }
+        return c.predicate;
+    }
+
+    private synchronized Compiled compileAndStore(PropertyValueMapper mapper) {
+        Compiled c = compiled.get(mapper);
+        if (c == null) {
+            c = new Compiled(mapper, compile(mapper));
+            Map<PropertyValueMapper, Compiled> newCompiled = new IdentityHashMap<>(compiled);
+            newCompiled.put(mapper, c);
+            compiled = newCompiled;
+        }
+        return c;
+    }
+
+    @Nullable
+    static PackedStatePredicate compile(Predicate<?> predicate, PropertyValueMapper mapper) {
+        return predicate instanceof FoamyCompilablePredicate ? ((FoamyCompilablePredicate) predicate).compile(mapper) : null;
+    }
+
+    @Override
+    public final boolean apply(@Nullable IBlockState state) {
+        if (state instanceof FoamyBlockState) {
+            FoamyBlockState foamyState = (FoamyBlockState) state;
+            PackedStatePredicate predicate = getCompiled(foamyState.getMapper());
+            if (predicate != null) {
+                return predicate.test(foamyState.getPackedValue());
+            }
+        }
+
+        return applyUncompiled(state);
+    }
+}
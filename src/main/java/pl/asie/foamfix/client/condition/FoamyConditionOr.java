@@ -26,13 +26,14 @@ import gnu.trove.strategy.HashingStrategy;
 import net.minecraft.block.state.BlockStateContainer;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.renderer.block.model.multipart.ICondition;
+import pl.asie.foamfix.common.PropertyValueMapper;
 
 import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.stream.StreamSupport;
 
 public class FoamyConditionOr implements ICondition {
-    public static final class PredicateImpl implements Predicate<IBlockState> {
+    public static final class PredicateImpl extends FoamyCompilablePredicate {
         private final Predicate[] predicates;
 
         public PredicateImpl(Predicate[] predicates) {
@@ -40,7 +41,18 @@ public class FoamyConditionOr implements ICondition {
         }
 
         @Override
-        public boolean apply(@Nullable IBlockState input) {
+        public PackedStatePredicate compile(PropertyValueMapper mapper) {
+            PackedStatePredicate[] compiled = new PackedStatePredicate[predicates.length];
+            for (int i = 0; i < predicates.length; i++) {
+                if ((compiled[i] = FoamyCompilablePredicate.compile(predicates[i], mapper)) == null) {
+                    return null;
+                }
+            }
+            return PackedStatePredicate.or(compiled);
+        }
+
+        @Override
+        protected boolean applyUncompiled(@Nullable IBlockState input) {
             for (int i = 0; i < predicates.length; i++) {
                 //noinspection unchecked
                 if (predicates[i].apply(input)) {
@@ -24,6 +24,7 @@ import net.minecraft.block.properties.IProperty;
 import net.minecraft.block.state.BlockStateContainer;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.renderer.block.model.multipart.ConditionPropertyValue;
+import pl.asie.foamfix.common.PropertyValueMapper;
 import scala.Enumeration;
 
 import javax.annotation.Nullable;
@@ -31,7 +32,7 @@ import java.util.Arrays;
 import java.util.List;
 
 public class FoamyConditionPropertyValue extends ConditionPropertyValue {
-    public static final class PredicateNegative implements Predicate<IBlockState> {
+    public static final class PredicateNegative extends FoamyCompilablePredicate {
         private final IProperty<?> property;
         private final Object[] values;
 
@@ -41,7 +42,12 @@ public class FoamyConditionPropertyValue extends ConditionPropertyValue {
         }
 
         @Override
-        public boolean apply(@Nullable IBlockState state) {
+        public PackedStatePredicate compile(PropertyValueMapper mapper) {
+            return PackedStatePredicate.compileValues(mapper, property, values, true);
+        }
+
+        @Override
+        protected boolean applyUncompiled(@Nullable IBlockState state) {
             if (state != null) {
                 Object value = state.getValue(property);
                 for (int i = 0; i < values.length; i++) {
@@ -74,7 +80,7 @@ public class FoamyConditionPropertyValue extends ConditionPropertyValue {
         }
     }
 
-    public static final class PredicatePositive implements Predicate<IBlockState> {
+    public static final class PredicatePositive extends FoamyCompilablePredicate {
         private final IProperty<?> property;
         private final Object[] values;
 
@@ -84,7 +90,12 @@ public class FoamyConditionPropertyValue extends ConditionPropertyValue {
         }
 
         @Override
-        public boolean apply(@Nullable IBlockState state) {
+        public PackedStatePredicate compile(PropertyValueMapper mapper) {
+            return PackedStatePredicate.compileValues(mapper, property, values, false);
+        }
+
+        @Override
+        protected boolean applyUncompiled(@Nullable IBlockState state) {
             if (state != null) {
                 Object value = state.getValue(property);
                 for (int i = 0; i < values.length; i++) {
@@ -117,7 +128,7 @@ public class FoamyConditionPropertyValue extends ConditionPropertyValue {
         }
     }
 
-    public static final class SingletonPredicatePositive implements Predicate<IBlockState> {
+    public static final class SingletonPredicatePositive extends FoamyCompilablePredicate {
         private final IProperty<?> property;
         private final Object value;
 
@@ -127,7 +138,12 @@ public class FoamyConditionPropertyValue extends ConditionPropertyValue {
         }
 
         @Override
-        public boolean apply(@Nullable IBlockState state) {
+        public PackedStatePredicate compile(PropertyValueMapper mapper) {
+            return PackedStatePredicate.compileValues(mapper, property, new Object[] { value }, false);
+        }
+
+        @Override
+        protected boolean applyUncompiled(@Nullable IBlockState state) {
             return state != null && state.getValue(property).equals(value);
         }
 
@@ -144,7 +160,7 @@ public class FoamyConditionPropertyValue extends ConditionPropertyValue {
         }
     }
 
-    public static final class SingletonPredicateNegative implements Predicate<IBlockState> {
+    public static final class SingletonPredicateNegative extends FoamyCompilablePredicate {
         private final IProperty<?> property;
         private final Object value;
 
@@ -154,7 +170,12 @@ public class FoamyConditionPropertyValue extends ConditionPropertyValue {
         }
 
         @Override
-        public boolean apply(@Nullable IBlockState state) {
+        public PackedStatePredicate compile(PropertyValueMapper mapper) {
+            return PackedStatePredicate.compileValues(mapper, property, new Object[] { value }, true);
+        }
+
+        @Override
+        protected boolean applyUncompiled(@Nullable IBlockState state) {
             return state == null || !state.getValue(property).equals(value);
         }
 
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.client.condition;
+
+import net.minecraft.block.properties.IProperty;
+import pl.asie.foamfix.common.PropertyValueMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A multipart condition compiled against one PropertyValueMapper, testing
+ * packed FoamyBlockState values directly.
+ */
+public interface PackedStatePredicate {
+    PackedStatePredicate TRUE = value -> true;
+    PackedStatePredicate FALSE = value -> false;
+
+    boolean test(int value);
+
+    /**
+     * (value & mask) == expected; And-ed single-value conditions collapse into one of these.
+     */
+    final class MaskEquals implements PackedStatePredicate {
+        private final int mask, expected;
+        private final boolean negate;
+
+        private MaskEquals(int mask, int expected, boolean negate) {
+            this.mask = mask;
+            this.expected = expected;
+            this.negate = negate;
+        }
+
+        @Override
+        public boolean test(int value) {
+            return ((value & mask) == expected) != negate;
+        }
+    }
+
+    /**
+     * Tests a property's packed index against a bitset of allowed indices.
+     */
+    final class IndexSet implements PackedStatePredicate {
+        private final int shift, mask;
+        private final long allowed;
+
+        private IndexSet(int shift, int mask, long allowed) {
+            this.shift = shift;
+            this.mask = mask;
+            this.allowed = allowed;
+        }
+
+        @Override
+        public boolean test(int value) {
+            return ((allowed >>> ((value >> shift) & mask)) & 1) != 0;
+        }
+    }
+
+    final class And implements PackedStatePredicate {
+        private final PackedStatePredicate[] predicates;
+
+        private And(PackedStatePredicate[] predicates) {
+            this.predicates = predicates;
+        }
+
+        @Override
+        public boolean test(int value) {
+            for (PackedStatePredicate predicate : predicates) {
+                if (!predicate.test(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    final class Or implements PackedStatePredicate {
+        private final PackedStatePredicate[] predicates;
+
+        private Or(PackedStatePredicate[] predicates) {
+            this.predicates = predicates;
+        }
+
+        @Override
+        public boolean test(int value) {
+            for (PackedStatePredicate predicate : predicates) {
+                if (predicate.test(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return A predicate matching (or, if negate is set, not matching) any of the values, or null if it cannot be compiled.
+     */
+    static PackedStatePredicate compileValues(PropertyValueMapper mapper, IProperty<?> property, Object[] values, boolean negate) {
+        int shift = mapper.getPropertyBitPosition(property);
+        int mask = mapper.getPropertyBitMask(property);
+        if (shift < 0) {
+            // getValue() would throw; leave that to the fallback
+            return null;
+        }
+
+        if (values.length == 1) {
+            int index = mapper.getPropertyValueIndex(property, values[0]);
+            if (index < 0) {
+                return negate ? TRUE : FALSE;
+            }
+            return new MaskEquals(mask << shift, index << shift, negate);
+        }
+
+        if (mask >= 64) {
+            return null;
+        }
+
+        long allowed = 0;
+        for (Object o : values) {
+            int index = mapper.getPropertyValueIndex(property, o);
+            if (index >= 0) {
+                allowed |= 1L << index;
+            }
+        }
+
+        if (negate) {
+            allowed = ~allowed;
+        }
+
+        return new IndexSet(shift, mask, allowed);
+    }
+
+    static PackedStatePredicate and(PackedStatePredicate[] predicates) {
+        List<PackedStatePredicate> remaining = new ArrayList<>(predicates.length);
+        int mask = 0, expected = 0;
+
+        for (PackedStatePredicate predicate : predicates) {
+            if (predicate == FALSE) {
+                return FALSE;
+            } else if (predicate == TRUE) {
+                continue;
+            } else if (predicate instanceof MaskEquals && !((MaskEquals) predicate).negate) {
+                MaskEquals me = (MaskEquals) predicate;
+                if (((expected ^ me.expected) & mask & me.mask) != 0) {
+                    // two conditions requiring different values of the same property
+                    return FALSE;
+                }
+                mask |= me.mask;
+                expected |= me.expected;
+            } else {
+                remaining.add(predicate);
+            }
+        }
+
+        if (mask != 0) {
+            remaining.add(0, new MaskEquals(mask, expected, false));
+        }
+
+        switch (remaining.size()) {
+            case 0:
+                return TRUE;
+            case 1:
+                return remaining.get(0);
+            default:
+                return new And(remaining.toArray(new PackedStatePredicate[0]));
+        }
+    }
+
+    static PackedStatePredicate or(PackedStatePredicate[] predicates) {
+        List<PackedStatePredicate> remaining = new ArrayList<>(predicates.length);
+
+        for (PackedStatePredicate predicate : predicates) {
+            if (predicate == TRUE) {
+                return TRUE;
+            } else if (predicate != FALSE) {
+                remaining.add(predicate);
+            }
+        }
+
+        switch (remaining.size()) {
+            case 0:
+                return FALSE;
+            case 1:
+                return remaining.get(0);
+            default:
+                return new Or(remaining.toArray(new PackedStatePredicate[0]));
+        }
+    }
+}
@@ -45,6 +45,8 @@ package pl.asie.foamfix.client.deduplicator;
 
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.renderer.block.model.IBakedModel;
 import net.minecraft.client.renderer.block.model.ModelResourceLocation;
 import net.minecraft.client.renderer.block.model.MultipartBakedModel;
@@ -62,6 +64,7 @@ import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.registry.ForgeRegistries;
 import pl.asie.foamfix.FoamFix;
 import pl.asie.foamfix.client.FoamyMultipartBakedModel;
+import pl.asie.foamfix.common.FoamyBlockState;
 import pl.asie.foamfix.shared.FoamFixShared;
 import pl.asie.foamfix.util.MethodHandleHelper;
 
@@ -127,6 +130,57 @@ public final class FoamFixModelDeduplicate {
         }
     }
 
+    private void buildSelectorTable(FoamyMultipartBakedModel model, ModelResourceLocation loc) {
+        // the default state mapper names block models after the block - custom ones get their table on first use
+        ResourceLocation blockLoc = new ResourceLocation(loc.getNamespace(), loc.getPath());
+        Block block = ForgeRegistries.BLOCKS.getValue(blockLoc);
+        if (block != null && blockLoc.equals(block.getRegistryName())) {
+            IBlockState state = block.getDefaultState();
+            if (state instanceof FoamyBlockState) {
+                model.buildSelectorTable(((FoamyBlockState) state).getMapper());
+            }
+        }
+    }
+
+    private void debugSelectorTables(ModelBakeEvent event) {
+        Map<FoamyMultipartBakedModel, ModelResourceLocation> models = new IdentityHashMap<>();
+        for (ModelResourceLocation loc : event.getModelRegistry().getKeys()) {
+            IBakedModel model = event.getModelRegistry().getObject(loc);
+            if (model instanceof FoamyMultipartBakedModel) {
+                models.putIfAbsent((FoamyMultipartBakedModel) model, loc);
+            }
+        }
+
+        try {
+            File outFile = new File("foamfixMultipartSelectorTables.txt");
+            PrintWriter writer = new PrintWriter(outFile);
+            long totalMemory = 0;
+            int tables = 0;
+
+            for (Map.Entry<FoamyMultipartBakedModel, ModelResourceLocation> entry : models.entrySet()) {
+                FoamyMultipartBakedModel model = entry.getKey();
+                int states = model.getSelectorTableStateCount();
+                if (states == 0) {
+                    writer.println(entry.getValue() + ": no table (" + model.predicates.length + " selectors)");
+                    continue;
+                }
+
+                long memory = 16 + 8L * states;
+                long predicateTime = model.timeSelectorMatching(false, 16);
+                long tableTime = model.timeSelectorMatching(true, 16);
+                writer.println(String.format("%s: %d states, %d selectors, %d bytes, %.2fx speedup", entry.getValue(), states,
+                        model.predicates.length, memory, tableTime > 0 ? (double) predicateTime / tableTime : 0.0));
+                totalMemory += memory;
+                tables++;
+            }
+
+            writer.println("Total: " + tables + " tables, " + totalMemory + " bytes");
+            writer.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     @SubscribeEvent(priority = EventPriority.LOW)
     public void onModelBake(ModelBakeEvent event) {
         if (FoamFixShared.config.dbgCountModels) {
@@ -146,6 +200,9 @@ public final class FoamFixModelDeduplicate {
             int itemsCleared = 0;
             FoamFix.getLogger().info("Clearing ModelLoaderRegistry cache (" + cache.size() + " items)...");
             int cacheSize = cache.size();
+            // Nothing else is worth keeping for the next reload: ModelLoader's constructor
+            // clears this cache anyway, a reload usually means the resources changed, and
+            // VanillaModelWrappers would keep the old ModelLoader alive.
             cache.entrySet().removeIf((e) -> {
                 ResourceLocation r = e.getKey();
 
@@ -254,7 +311,9 @@ public final class FoamFixModelDeduplicate {
 
                         if (model.getClass() == MultipartBakedModel.class) {
                             deduplicator.successfuls++;
-                            model = new FoamyMultipartBakedModel((MultipartBakedModel) model);
+                            FoamyMultipartBakedModel foamyModel = new FoamyMultipartBakedModel((MultipartBakedModel) model);
+                            buildSelectorTable(foamyModel, loc);
+                            model = foamyModel;
                         }
 
                         try {
@@ -267,6 +326,10 @@ public final class FoamFixModelDeduplicate {
 
                     ProgressManager.pop(bakeBar);
                     FoamFix.getLogger().info("Deduplicated " + deduplicator.successfuls + " (+ " + deduplicator.successfulTrims + ") objects.");
+
+                    if (FoamFixShared.config.dbgCountModels) {
+                        debugSelectorTables(event);
+                    }
                 }
             }
             /* List<Class> map = Lists.newArrayList(deduplicator.dedupObjDataMap.keySet());
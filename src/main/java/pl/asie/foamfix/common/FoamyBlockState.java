@@ -23,24 +23,63 @@ import net.minecraft.block.Block;
 import net.minecraft.block.properties.IProperty;
 import net.minecraft.block.state.BlockStateContainer;
 import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IBlockAccess;
+import pl.asie.foamfix.api.IFoamFixPureBlock;
+import pl.asie.foamfix.shared.FoamFixShared;
 
+import java.util.Collection;
 import java.util.Map;
 
 public class FoamyBlockState extends BlockStateContainer.StateImplementation {
+	// derivedProperties layout: flags in the low byte, light opacity and light value in the next two
+	private static final long DERIVED_OPAQUE_CUBE = 1L;
+	private static final long DERIVED_FULL_CUBE = 1L << 1;
+	private static final long DERIVED_FULL_BLOCK = 1L << 2;
+	private static final long DERIVED_TRANSLUCENT = 1L << 3;
+	private static final long DERIVED_NEIGHBOR_BRIGHTNESS = 1L << 4;
+	private static final int DERIVED_LIGHT_OPACITY_SHIFT = 8;
+	private static final int DERIVED_LIGHT_VALUE_SHIFT = 16;
+	private static final long DERIVED_CACHED = 1L << 62;
+	private static final long DERIVED_COMPUTED = 1L << 63;
+	// Block.<init> already queries its default state, before the subclass constructor
+	// calls setLightOpacity/setLightLevel - and mods keep tweaking blocks until postInit
+	private static volatile boolean derivedPropertiesReady;
+
 	protected final PropertyValueMapper owner;
 	protected int value;
+	// only used in lazy mode, where the properties field is null
+	private volatile ImmutableMap<IProperty<?>, Comparable<?>> lazyProperties;
+	private volatile long derivedProperties;
 
 	public FoamyBlockState(PropertyValueMapper owner, Block blockIn, ImmutableMap < IProperty<?>, Comparable<? >> propertiesIn) {
 		super(blockIn, propertiesIn);
 		this.owner = owner;
 	}
 
+	public FoamyBlockState(PropertyValueMapper owner, Block blockIn, int value) {
+		super(blockIn, null);
+		this.owner = owner;
+		this.value = value;
+	}
+
+	public final PropertyValueMapper getMapper() {
+		return owner;
+	}
+
+	/**
+	 * @return This state's packed property value, as laid out by {@link #getMapper()}.
+	 */
+	public final int getPackedValue() {
+		return value;
+	}
+
 	@Override
 	public <T extends Comparable<T>, V extends T> IBlockState withProperty(IProperty<T> property, V value) {
 		IBlockState state = owner.withProperty(this.value, property, value);
 
 		if (state == null) {
-			Comparable<?> comparable = this.properties.get(property);
+			Comparable<?> comparable = this.properties != null ? this.properties.get(property) : owner.getValue(this.value, property);
 			if (comparable == null) {
 				throw new IllegalArgumentException("Cannot set property " + property + " as it does not exist in " + this.getBlock().getBlockState());
 			} else {
@@ -51,8 +90,146 @@ public class FoamyBlockState extends BlockStateContainer.StateImplementation {
 		}
 	}
 
+	@Override
+	public <T extends Comparable<T>> T getValue(IProperty<T> property) {
+		if (this.properties != null) {
+			return super.getValue(property);
+		}
+
+		Comparable<?> comparable = owner.getValue(this.value, property);
+		if (comparable == null) {
+			throw new IllegalArgumentException("Cannot get property " + property + " as it does not exist in " + this.getBlock().getBlockState());
+		} else {
+			return property.getValueClass().cast(comparable);
+		}
+	}
+
+	@Override
+	public Collection<IProperty<?>> getPropertyKeys() {
+		return this.properties != null ? super.getPropertyKeys() : owner.getPropertyKeys();
+	}
+
+	@Override
+	public ImmutableMap<IProperty<?>, Comparable<?>> getProperties() {
+		if (this.properties != null) {
+			return this.properties;
+		}
+
+		ImmutableMap<IProperty<?>, Comparable<?>> map = lazyProperties;
+		if (map == null) {
+			IBlockState cleanState = owner.getPropertyByValue(this.value);
+			if (cleanState != this && cleanState != null) {
+				// extended copies share the map of their clean state
+				return cleanState.getProperties();
+			}
+
+			// racing threads build equal immutable maps, so whichever one is published wins
+			map = owner.createPropertyMap(this.value);
+			lazyProperties = map;
+		}
+		return map;
+	}
+
+	/**
+	 * Called once all mods have finished setting up their blocks; derived
+	 * properties are not cached before then.
+	 */
+	public static void enableDerivedPropertyCache() {
+		derivedPropertiesReady = true;
+	}
+
+	private long getDerivedProperties() {
+		long derived = derivedProperties;
+		if (derived == 0) {
+			if (!derivedPropertiesReady) {
+				return DERIVED_COMPUTED;
+			}
+
+			IBlockState cleanState = owner.getPropertyByValue(this.value);
+			if (cleanState != this && cleanState instanceof FoamyBlockState) {
+				derived = ((FoamyBlockState) cleanState).getDerivedProperties();
+			} else if (FoamFixShared.config.geCacheDerivedStateProperties && getBlock() instanceof IFoamFixPureBlock) {
+				derived = DERIVED_COMPUTED | DERIVED_CACHED
+						| (super.isOpaqueCube() ? DERIVED_OPAQUE_CUBE : 0)
+						| (super.isFullCube() ? DERIVED_FULL_CUBE : 0)
+						| (super.isFullBlock() ? DERIVED_FULL_BLOCK : 0)
+						| (super.isTranslucent() ? DERIVED_TRANSLUCENT : 0)
+						| (super.useNeighborBrightness() ? DERIVED_NEIGHBOR_BRIGHTNESS : 0)
+						| ((long) (super.getLightOpacity() & 0xFF) << DERIVED_LIGHT_OPACITY_SHIFT)
+						| ((long) (super.getLightValue() & 0xFF) << DERIVED_LIGHT_VALUE_SHIFT);
+			} else {
+				derived = DERIVED_COMPUTED;
+			}
+			derivedProperties = derived;
+		}
+		return derived;
+	}
+
+	@Override
+	public boolean isOpaqueCube() {
+		long derived = getDerivedProperties();
+		return (derived & DERIVED_CACHED) != 0 ? (derived & DERIVED_OPAQUE_CUBE) != 0 : super.isOpaqueCube();
+	}
+
+	@Override
+	public boolean isFullCube() {
+		long derived = getDerivedProperties();
+		return (derived & DERIVED_CACHED) != 0 ? (derived & DERIVED_FULL_CUBE) != 0 : super.isFullCube();
+	}
+
+	@Override
+	public boolean isFullBlock() {
+		long derived = getDerivedProperties();
+		return (derived & DERIVED_CACHED) != 0 ? (derived & DERIVED_FULL_BLOCK) != 0 : super.isFullBlock();
+	}
+
+	@Override
+	public boolean isTranslucent() {
+		long derived = getDerivedProperties();
+		return (derived & DERIVED_CACHED) != 0 ? (derived & DERIVED_TRANSLUCENT) != 0 : super.isTranslucent();
+	}
+
+	@Override
+	public boolean useNeighborBrightness() {
+		long derived = getDerivedProperties();
+		return (derived & DERIVED_CACHED) != 0 ? (derived & DERIVED_NEIGHBOR_BRIGHTNESS) != 0 : super.useNeighborBrightness();
+	}
+
+	@Override
+	public int getLightOpacity() {
+		long derived = getDerivedProperties();
+		return (derived & DERIVED_CACHED) != 0 ? (int) (derived >> DERIVED_LIGHT_OPACITY_SHIFT) & 0xFF : super.getLightOpacity();
+	}
+
+	@Override
+	public int getLightOpacity(IBlockAccess world, BlockPos pos) {
+		long derived = getDerivedProperties();
+		return (derived & DERIVED_CACHED) != 0 ? (int) (derived >> DERIVED_LIGHT_OPACITY_SHIFT) & 0xFF : super.getLightOpacity(world, pos);
+	}
+
+	@Override
+	public int getLightValue() {
+		long derived = getDerivedProperties();
+		return (derived & DERIVED_CACHED) != 0 ? (int) (derived >> DERIVED_LIGHT_VALUE_SHIFT) & 0xFF : super.getLightValue();
+	}
+
+	@Override
+	public int getLightValue(IBlockAccess world, BlockPos pos) {
+		long derived = getDerivedProperties();
+		return (derived & DERIVED_CACHED) != 0 ? (int) (derived >> DERIVED_LIGHT_VALUE_SHIFT) & 0xFF : super.getLightValue(world, pos);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.properties != null ? super.hashCode() : owner.getPropertyMapHashCode(this.value);
+	}
+
 	@Override
 	public void buildPropertyValueTable(Map <Map< IProperty<?>, Comparable<? >>, BlockStateContainer.StateImplementation > map) {
-		this.value = owner.generateValue(this);
+		if (this.properties != null) {
+			this.value = owner.generateValue(this);
+		} else {
+			owner.putState(this.value, this);
+		}
 	}
 }
@@ -44,6 +44,10 @@ public class FoamyBlockStateContainer extends BlockStateContainer {
 		}
 
 		if (foamfix_mapper.isValid()) {
+			if (foamfix_mapper.isLazy()) {
+				return new FoamyBlockState(foamfix_mapper, block, foamfix_mapper.generateValue(properties));
+			}
+
 			return new FoamyBlockState(foamfix_mapper, block, properties);
 		} else {
 			return createState_foamfix_old(block, properties, unlistedProperties);
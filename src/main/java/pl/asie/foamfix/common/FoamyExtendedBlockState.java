@@ -26,29 +26,37 @@ import net.minecraftforge.common.property.IExtendedBlockState;
 import net.minecraftforge.common.property.IUnlistedProperty;
 
 import java.util.Collection;
-import java.util.Map;
 import java.util.Optional;
 
 /**
  * Created by asie on 12/31/16.
  */
 public class FoamyExtendedBlockState extends FoamyBlockState implements IExtendedBlockState {
-	private final ImmutableMap<IUnlistedProperty<?>, Optional<?>> unlistedProperties;
+	// indexed by the owner's unlisted property ordinal; null means Optional.empty()
+	private final Object[] unlistedValues;
 	private final boolean hasUnlistedProperty;
+	private ImmutableMap<IUnlistedProperty<?>, Optional<?>> unlistedPropertiesMap;
 
 	public FoamyExtendedBlockState(PropertyValueMapper owner, Block block, ImmutableMap<IProperty<?>, Comparable<?>> properties, ImmutableMap<IUnlistedProperty<?>, Optional<?>> unlistedProperties, boolean hasUnlistedProperty) {
 		super(owner, block, properties);
-		this.unlistedProperties = unlistedProperties;
+		this.unlistedValues = owner.createUnlistedValues(unlistedProperties);
 		this.hasUnlistedProperty = hasUnlistedProperty;
 	}
 
 	public FoamyExtendedBlockState(PropertyValueMapper owner, Block block, ImmutableMap<IProperty<?>, Comparable<?>> properties, ImmutableMap<IUnlistedProperty<?>, Optional<?>> unlistedProperties, boolean hasUnlistedProperty, int value) {
 		super(owner, block, properties);
-		this.unlistedProperties = unlistedProperties;
+		this.unlistedValues = owner.createUnlistedValues(unlistedProperties);
 		this.hasUnlistedProperty = hasUnlistedProperty;
 		this.value = value;
 	}
 
+	private FoamyExtendedBlockState(PropertyValueMapper owner, Block block, ImmutableMap<IProperty<?>, Comparable<?>> properties, Object[] unlistedValues, int value) {
+		super(owner, block, properties);
+		this.unlistedValues = unlistedValues;
+		this.hasUnlistedProperty = true;
+		this.value = value;
+	}
+
 	@Override
 	public <T extends Comparable<T>, V extends T> IBlockState withProperty(IProperty<T> property, V propertyValue) {
 		int newValue = owner.withPropertyValue(value, property, propertyValue);
@@ -70,64 +78,72 @@ public class FoamyExtendedBlockState extends FoamyBlockState implements IExtende
 		}
 
 		if (hasUnlistedProperty) {
-			return new FoamyExtendedBlockState(owner, getBlock(), state.getProperties(), unlistedProperties, true, newValue);
+			return new FoamyExtendedBlockState(owner, getBlock(), this.properties != null ? state.getProperties() : null, unlistedValues, newValue);
 		} else {
 			return state;
 		}
 	}
 
+	private int getUnlistedIndex(IUnlistedProperty<?> property) {
+		int index = owner.getUnlistedIndex(property);
+		if (index < 0) {
+			throw new IllegalArgumentException("Cannot get unlisted property " + property + " as it does not exist in " + getBlock().getBlockState());
+		}
+		return index;
+	}
+
 	@Override
 	public <V> IExtendedBlockState withProperty(IUnlistedProperty<V> property, V value) {
 		if (!property.isValid(value)) {
 			throw new IllegalArgumentException("Cannot set unlisted property " + property + " to " + value + " on block " + Block.REGISTRY.getNameForObject(getBlock()) + ", it is not an allowed value");
 		}
 
-		boolean hasOpt = false;
-		boolean setValue = false;
-
-		ImmutableMap.Builder<IUnlistedProperty<?>, Optional<?>> newMap = new ImmutableMap.Builder<>();
-		for (Map.Entry<IUnlistedProperty<?>, Optional<?>> entry : unlistedProperties.entrySet()) {
-			IUnlistedProperty<?> entryKey = entry.getKey();
-			if (!setValue && entryKey.equals(property)) {
-				newMap.put(entryKey, Optional.ofNullable(value));
-				setValue = true;
-			} else {
-				Optional<?> entryValue = entry.getValue();
-				newMap.put(entryKey, entryValue);
-				hasOpt |= entryValue.isPresent();
-			}
+		int index = owner.getUnlistedIndex(property);
+		if (index < 0) {
+			throw new IllegalArgumentException("Cannot set unlisted property " + property + " as it does not exist in " + getBlock().getBlockState());
 		}
 
-		if (!setValue) {
-			throw new IllegalArgumentException("Cannot set unlisted property " + property + " as it does not exist in " + getBlock().getBlockState());
+		if (unlistedValues[index] == value) {
+			return this;
 		}
 
-		if (value != null || hasOpt) {
-			return new FoamyExtendedBlockState(owner, getBlock(), getProperties(), newMap.build(), true, this.value);
-		} else {
-			return (IExtendedBlockState) owner.getPropertyByValue(this.value);
+		if (value == null) {
+			boolean hasOpt = false;
+			for (int i = 0; i < unlistedValues.length; i++) {
+				if (i != index && unlistedValues[i] != null) {
+					hasOpt = true;
+					break;
+				}
+			}
+
+			if (!hasOpt) {
+				return (IExtendedBlockState) owner.getPropertyByValue(this.value);
+			}
 		}
+
+		Object[] newValues = unlistedValues.clone();
+		newValues[index] = value;
+		return new FoamyExtendedBlockState(owner, getBlock(), this.properties, newValues, this.value);
 	}
 
 	@Override
 	public Collection<IUnlistedProperty<?>> getUnlistedNames() {
-		return unlistedProperties.keySet();
+		return owner.getUnlistedPropertyKeys();
 	}
 
 	@Override
 	public <V> V getValue(IUnlistedProperty<V> property) {
-		Optional optional = this.unlistedProperties.get(property);
-
-		if (optional == null) {
-			throw new IllegalArgumentException("Cannot get unlisted property " + property + " as it does not exist in " + getBlock().getBlockState());
-		}
-
-		return property.getType().cast(optional.orElse(null));
+		return property.getType().cast(unlistedValues[getUnlistedIndex(property)]);
 	}
 
 	@Override
 	public ImmutableMap<IUnlistedProperty<?>, Optional<?>> getUnlistedProperties() {
-		return unlistedProperties;
+		// IExtendedBlockState requires an ImmutableMap, so this can't be a view; only build it if asked
+		ImmutableMap<IUnlistedProperty<?>, Optional<?>> map = unlistedPropertiesMap;
+		if (map == null) {
+			map = unlistedPropertiesMap = owner.createUnlistedPropertyMap(unlistedValues);
+		}
+		return map;
 	}
 
 	@Override
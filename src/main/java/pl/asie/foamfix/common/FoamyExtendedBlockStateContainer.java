@@ -47,6 +47,10 @@ public class FoamyExtendedBlockStateContainer extends ExtendedBlockState {
 
 		if (foamfix_mapper.isValid()) {
 			if (unlistedProperties == null || unlistedProperties.isEmpty()) {
+				if (foamfix_mapper.isLazy()) {
+					return new FoamyBlockState(foamfix_mapper, block, foamfix_mapper.generateValue(properties));
+				}
+
 				return new FoamyBlockState(foamfix_mapper, block, properties);
 			} else {
 				boolean has = false;
@@ -57,6 +61,10 @@ public class FoamyExtendedBlockStateContainer extends ExtendedBlockState {
 					}
 				}
 
+				if (foamfix_mapper.isLazy()) {
+					return new FoamyExtendedBlockState(foamfix_mapper, block, null, unlistedProperties, has, foamfix_mapper.generateValue(properties));
+				}
+
 				return new FoamyExtendedBlockState(foamfix_mapper, block, properties, unlistedProperties, has);
 			}
 		} else {
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.common;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import gnu.trove.set.hash.TCustomHashSet;
+import gnu.trove.strategy.HashingStrategy;
+import net.minecraft.block.properties.IProperty;
+import pl.asie.foamfix.client.IDeduplicatingStorage;
+import pl.asie.foamfix.shared.FoamFixShared;
+import pl.asie.foamfix.util.DeduplicatingStorageTrove;
+import pl.asie.foamfix.util.HashingStrategies;
+
+import java.util.Set;
+
+/**
+ * Canonical instances for vanilla block properties, filled in as they are
+ * constructed (see PropertyInternPatch). Replaces the old reflective
+ * post-init pass over every registered block.
+ *
+ * Value sets are compared in iteration order, as that order determines
+ * the order of a block's states (and thus its metadata in some mods).
+ *
+ * The factories delegate to each other (PropertyEnum.create has three
+ * overloads), so the same instance is often passed in more than once; it is
+ * only counted the first time. Properties of other classes are left to
+ * PropertyValueDeduplicator.
+ */
+public final class PropertyInterner {
+	private static final HashingStrategy<ImmutableSet> VALUES_STRATEGY = new HashingStrategy<ImmutableSet>() {
+		@Override
+		public int computeHashCode(ImmutableSet object) {
+			int hash = 1;
+			for (Object o : object) {
+				hash = hash * 31 + o.hashCode();
+			}
+			return hash;
+		}
+
+		@Override
+		public boolean equals(ImmutableSet o1, ImmutableSet o2) {
+			return o1 == o2 || (o1 != null && o2 != null && Iterables.elementsEqual(o1, o2));
+		}
+	};
+
+	private static final HashingStrategy<IProperty> PROPERTY_STRATEGY = new HashingStrategy<IProperty>() {
+		@Override
+		public int computeHashCode(IProperty object) {
+			return object.getName().hashCode() * 31 + object.getValueClass().hashCode();
+		}
+
+		@Override
+		public boolean equals(IProperty o1, IProperty o2) {
+			if (o1 == o2) {
+				return true;
+			} else if (o1 == null || o2 == null) {
+				return false;
+			}
+
+			return o1.getClass() == o2.getClass()
+					&& o1.getValueClass() == o2.getValueClass()
+					&& o1.getName().equals(o2.getName())
+					&& (o1.getAllowedValues() == o2.getAllowedValues() || Iterables.elementsEqual(o1.getAllowedValues(), o2.getAllowedValues()));
+		}
+	};
+
+	private static final IDeduplicatingStorage<ImmutableSet> values = new DeduplicatingStorageTrove<>(VALUES_STRATEGY);
+	private static final IDeduplicatingStorage<IProperty> properties = new DeduplicatingStorageTrove<>(PROPERTY_STRATEGY);
+	// canonical instances already counted
+	private static final Set<Object> seen = new TCustomHashSet<>(HashingStrategies.IDENTITY);
+	private static int valuesCreated, valuesInterned, propertiesCreated, propertiesInterned;
+
+	private PropertyInterner() {
+
+	}
+
+	/**
+	 * @return Whether PropertyInternPatch is applied.
+	 */
+	public static boolean isActive() {
+		return FoamFixShared.isCoremod && FoamFixShared.config.geInternBlockProperties;
+	}
+
+	public static synchronized ImmutableSet internValues(ImmutableSet set) {
+		if (set == null) {
+			return null;
+		}
+
+		ImmutableSet result = values.deduplicate(set);
+		if (result != set) {
+			valuesCreated++;
+			valuesInterned++;
+		} else if (seen.add(set)) {
+			valuesCreated++;
+		}
+		return result;
+	}
+
+	public static synchronized IProperty intern(IProperty property) {
+		if (property == null) {
+			return null;
+		}
+
+		IProperty result = properties.deduplicate(property);
+		if (result != property) {
+			propertiesCreated++;
+			propertiesInterned++;
+		} else if (seen.add(property)) {
+			propertiesCreated++;
+		}
+		return result;
+	}
+
+	public static synchronized String getStatistics() {
+		return "Interned " + valuesInterned + "/" + valuesCreated + " property value sets and " + propertiesInterned + "/" + propertiesCreated + " properties.";
+	}
+}
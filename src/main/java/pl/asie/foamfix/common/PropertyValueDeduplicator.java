@@ -21,6 +21,9 @@ package pl.asie.foamfix.common;
 import gnu.trove.set.hash.TCustomHashSet;
 import net.minecraft.block.Block;
 import net.minecraft.block.properties.IProperty;
+import net.minecraft.block.properties.PropertyBool;
+import net.minecraft.block.properties.PropertyEnum;
+import net.minecraft.block.properties.PropertyInteger;
 import net.minecraftforge.fml.common.registry.ForgeRegistries;
 import pl.asie.foamfix.client.IDeduplicatingStorage;
 import pl.asie.foamfix.util.DeduplicatingStorageTrove;
@@ -33,6 +36,11 @@ import java.util.Set;
 public class PropertyValueDeduplicator {
     public int successfuls;
 
+    private static boolean isInterned(IProperty property) {
+        // already handled by PropertyInterner as they were constructed
+        return PropertyInterner.isActive() && (property instanceof PropertyBool || property instanceof PropertyInteger || property instanceof PropertyEnum);
+    }
+
     @SuppressWarnings("unchecked")
     public void deduplicate() {
         IDeduplicatingStorage storage = new DeduplicatingStorageTrove(HashingStrategies.GENERIC);
@@ -43,7 +51,7 @@ public class PropertyValueDeduplicator {
             if (b.getRegistryName() == null || !("immersiveengineering".equals(b.getRegistryName().getNamespace()))) {
                 for (IProperty property : b.getBlockState().getProperties()) {
                     try {
-                        if (checkedProperties.add(property)) {
+                        if (checkedProperties.add(property) && !isInterned(property)) {
                             Collection allowedValues = property.getAllowedValues();
                             Collection newAllowedValues = (Collection) storage.deduplicate(allowedValues);
                             if (newAllowedValues != allowedValues) {
@@ -18,6 +18,7 @@
  */
 package pl.asie.foamfix.common;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import gnu.trove.impl.Constants;
 import gnu.trove.map.TObjectIntMap;
@@ -31,6 +32,8 @@ import net.minecraft.block.properties.*;
 import net.minecraft.block.state.BlockStateContainer;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.math.MathHelper;
+import net.minecraftforge.common.property.IUnlistedProperty;
+import pl.asie.foamfix.shared.FoamFixShared;
 import pl.asie.foamfix.util.HashingStrategies;
 
 import java.util.*;
@@ -84,6 +87,8 @@ public class PropertyValueMapper {
 
 		public abstract int get(Object v);
 
+		public abstract Comparable<?> getValue(int index);
+
 		@Override
 		public boolean equals(Object other) {
 			if (!(other instanceof Entry))
@@ -107,35 +112,77 @@ public class PropertyValueMapper {
 		public int get(Object v) {
 			return v == Boolean.TRUE ? 1 : 0;
 		}
+
+		@Override
+		public Comparable<?> getValue(int index) {
+			return index == 1 ? Boolean.TRUE : Boolean.FALSE;
+		}
 	}
 
 	public static class ObjectEntry extends Entry {
-		private Object2IntMap values;
+		// mod properties rarely have more values than this, and their
+		// equals()/hashCode() are often far slower than a linear == scan
+		private static final int IDENTITY_SCAN_MAX = 16;
+
+		private final Object2IntMap values;
+		private final Comparable<?>[] valueArray;
 
 		private ObjectEntry(IProperty property, boolean identity) {
 			super(property);
 
-			//noinspection unchecked
-			this.values = identity ? new Object2IntOpenCustomHashMap(HashingStrategies.FASTUTIL_IDENTITY) : new Object2IntOpenHashMap();
-			this.values.defaultReturnValue(-1);
 			//noinspection unchecked
 			Collection<Object> allowedValues = property.getAllowedValues();
+			this.valueArray = new Comparable<?>[allowedValues.size()];
 
 			int i = 0;
 			for (Object o : allowedValues) {
-				this.values.put(o, i++);
+				this.valueArray[i++] = (Comparable<?>) o;
+			}
+
+			if (identity && valueArray.length <= IDENTITY_SCAN_MAX) {
+				// the scan is authoritative
+				this.values = null;
+			} else {
+				//noinspection unchecked
+				this.values = identity ? new Object2IntOpenCustomHashMap(HashingStrategies.FASTUTIL_IDENTITY) : new Object2IntOpenHashMap();
+				this.values.defaultReturnValue(-1);
+
+				for (i = 0; i < valueArray.length; i++) {
+					//noinspection unchecked
+					this.values.put(valueArray[i], i);
+				}
 			}
 		}
 
 		@Override
 		public int get(Object v) {
+			if (valueArray.length <= IDENTITY_SCAN_MAX) {
+				for (int i = 0; i < valueArray.length; i++) {
+					if (valueArray[i] == v) {
+						return i;
+					}
+				}
+
+				if (values == null) {
+					return -1;
+				}
+			}
+
 			return values.getInt(v);
 		}
+
+		@Override
+		public Comparable<?> getValue(int index) {
+			return index < valueArray.length ? valueArray[index] : null;
+		}
 	}
 
 	public static class EnumEntrySorted extends Entry {
-		private EnumEntrySorted(IProperty property, int count) {
+		private final Object[] values;
+
+		private EnumEntrySorted(IProperty property, Object[] values) {
 			super(property);
+			this.values = values;
 		}
 
 		@Override
@@ -143,11 +190,16 @@ public class PropertyValueMapper {
 			return ((Enum) v).ordinal();
 		}
 
+		@Override
+		public Comparable<?> getValue(int index) {
+			return index < values.length ? (Comparable<?>) values[index] : null;
+		}
+
 		public static Entry create(PropertyEnum entry) {
 			Object[] values = entry.getValueClass().getEnumConstants();
 
 			if (entry.getAllowedValues().size() == values.length) {
-				return new EnumEntrySorted(entry, values.length);
+				return new EnumEntrySorted(entry, values);
 			} else {
 				return new ObjectEntry(entry, true);
 			}
@@ -170,10 +222,16 @@ public class PropertyValueMapper {
 			// if vv < 0, it will be rejected anyway
 			return vv < count ? vv : -1;
 		}
+
+		@Override
+		public Comparable<?> getValue(int index) {
+			return index < count ? minValue + index : null;
+		}
 	}
 
 	public static class IntegerEntry extends Entry {
 		private Int2IntMap values;
+		private Comparable<?>[] valueArray;
 
 		private IntegerEntry(IProperty property) {
 			super(property);
@@ -181,9 +239,11 @@ public class PropertyValueMapper {
 			this.values = new Int2IntOpenHashMap();
 			this.values.defaultReturnValue(-1);
 			Collection<Object> allowedValues = property.getAllowedValues();
+			this.valueArray = new Comparable<?>[allowedValues.size()];
 
 			int i = 0;
 			for (Object o : allowedValues) {
+				this.valueArray[i] = (Comparable<?>) o;
 				this.values.put((int) o, i++);
 			}
 		}
@@ -193,6 +253,11 @@ public class PropertyValueMapper {
 			return values.get((int) v);
 		}
 
+		@Override
+		public Comparable<?> getValue(int index) {
+			return index < valueArray.length ? valueArray[index] : null;
+		}
+
 		public static Entry create(PropertyInteger entry) {
 			List<Integer> sorted = Lists.newArrayList(entry.getAllowedValues());
 			sorted.sort(Comparator.naturalOrder());
@@ -210,15 +275,24 @@ public class PropertyValueMapper {
 
 	private static final Map<IProperty<?>, Entry> entryMap = new IdentityHashMap<>();
 	private static final int MAX_BIT_POS = 31;
+	private static final IUnlistedProperty<?>[] NO_UNLISTED_PROPERTIES = new IUnlistedProperty<?>[0];
 
 	private final Entry[] entryList;
+	private final int[] entryBitPositions;
 	private final TObjectIntMap<String> entryPositionMap;
 	private final IBlockState[] stateMap;
+	private final Collection<IProperty<?>> properties;
+	private final boolean lazy;
+	private IUnlistedProperty<?>[] unlistedProperties = NO_UNLISTED_PROPERTIES;
+	private Collection<IUnlistedProperty<?>> unlistedPropertyKeys = Collections.emptyList();
+	private Object[] emptyUnlistedValues = new Object[0];
 
 	public PropertyValueMapper(BlockStateContainer container) {
-		Collection<IProperty<?>> properties = container.getProperties();
+		properties = Collections.unmodifiableCollection(container.getProperties());
+		lazy = FoamFixShared.config.geLazyBlockStateTable;
 
 		entryList = new Entry[properties.size()];
+		entryBitPositions = new int[entryList.length];
 		List<IProperty<?>> propertiesSortedFitness = Lists.newArrayList(properties);
 		propertiesSortedFitness.sort(COMPARATOR_BIT_FITNESS);
 		int i = 0;
@@ -232,8 +306,10 @@ public class PropertyValueMapper {
 
 		int bitPos = 0;
 		Entry lastEntry = null;
+		i = 0;
 		for (Entry ee : entryList) {
 			entryPositionMap.put(ee.property.getName(), bitPos);
+			entryBitPositions[i++] = bitPos;
 			bitPos += ee.bits;
 			lastEntry = ee;
 		}
@@ -253,6 +329,14 @@ public class PropertyValueMapper {
 		return stateMap != null;
 	}
 
+	/**
+	 * In lazy mode, states do not retain their property map - it is decoded
+	 * from the packed value and only materialized if something asks for it.
+	 */
+	public boolean isLazy() {
+		return lazy;
+	}
+
 	protected static Entry getPropertyEntry(IProperty property) {
 		Entry e = entryMap.get(property);
 		if (e == null) {
@@ -283,6 +367,94 @@ public class PropertyValueMapper {
 		return value;
 	}
 
+	protected int generateValue(Map<IProperty<?>, Comparable<?>> propertyMap) {
+		int bitPos = 0;
+		int value = 0;
+		for (Entry e : entryList) {
+			value |= e.get(propertyMap.get(e.property)) << bitPos;
+			bitPos += e.bits;
+		}
+
+		return value;
+	}
+
+	protected void putState(int value, IBlockState state) {
+		stateMap[value] = state;
+	}
+
+	private int getEntryIndex(IProperty<?> property) {
+		for (int i = 0; i < entryList.length; i++) {
+			if (entryList[i].property == property) {
+				return i;
+			}
+		}
+
+		for (int i = 0; i < entryList.length; i++) {
+			if (entryList[i].property.equals(property)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private Comparable<?> getValueAt(int value, int entryIndex) {
+		Entry e = entryList[entryIndex];
+		return e.getValue((value >> entryBitPositions[entryIndex]) & (e.bitSize - 1));
+	}
+
+	public Comparable<?> getValue(int value, IProperty<?> property) {
+		int i = getEntryIndex(property);
+		return i >= 0 ? getValueAt(value, i) : null;
+	}
+
+	public Collection<IProperty<?>> getPropertyKeys() {
+		return properties;
+	}
+
+	/**
+	 * @return The position of the property's lowest bit in packed values, or -1 if it is not a part of this mapper.
+	 */
+	public int getPropertyBitPosition(IProperty<?> property) {
+		int i = getEntryIndex(property);
+		return i >= 0 ? entryBitPositions[i] : -1;
+	}
+
+	/**
+	 * @return The (unshifted) mask of the property's bits in packed values, or 0 if it is not a part of this mapper.
+	 */
+	public int getPropertyBitMask(IProperty<?> property) {
+		int i = getEntryIndex(property);
+		return i >= 0 ? entryList[i].bitSize - 1 : 0;
+	}
+
+	/**
+	 * @return The (unshifted) packed index of the given value, or -1 if it is not a valid value.
+	 */
+	public int getPropertyValueIndex(IProperty<?> property, Object propertyValue) {
+		int i = getEntryIndex(property);
+		return i >= 0 ? entryList[i].get(propertyValue) : -1;
+	}
+
+	public ImmutableMap<IProperty<?>, Comparable<?>> createPropertyMap(int value) {
+		ImmutableMap.Builder<IProperty<?>, Comparable<?>> builder = ImmutableMap.builder();
+		for (IProperty<?> property : properties) {
+			builder.put(property, getValue(value, property));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Equivalent to createPropertyMap(value).hashCode(), without creating the map.
+	 */
+	public int getPropertyMapHashCode(int value) {
+		int hash = 0;
+		for (int i = 0; i < entryList.length; i++) {
+			hash += entryList[i].property.hashCode() ^ getValueAt(value, i).hashCode();
+		}
+		return hash;
+	}
+
 	public <T extends Comparable<T>, V extends T> IBlockState withProperty(int value, IProperty<T> property, V propertyValue) {
 		int bitPos = entryPositionMap.get(property.getName());
 		if (bitPos >= 0) {
@@ -303,6 +475,13 @@ public class PropertyValueMapper {
 		return stateMap[value];
 	}
 
+	/**
+	 * @return The size of the packed value space - one more than the largest valid packed value.
+	 */
+	public int getPackedValueCount() {
+		return stateMap.length;
+	}
+
 	public <T extends Comparable<T>, V extends T> int withPropertyValue(int value, IProperty<T> property, V propertyValue) {
 		int bitPos = entryPositionMap.get(property.getName());
 		if (bitPos >= 0) {
@@ -319,4 +498,61 @@ public class PropertyValueMapper {
 		return -1;
 	}
 
+	/**
+	 * Unlisted property ordinals are taken from the map the container hands to
+	 * createState() - ExtendedBlockState only stores its own unlisted property
+	 * set after the states have been created.
+	 */
+	protected Object[] createUnlistedValues(Map<IUnlistedProperty<?>, Optional<?>> unlistedMap) {
+		if (unlistedMap == null || unlistedMap.isEmpty()) {
+			return emptyUnlistedValues;
+		}
+
+		if (unlistedProperties.length != unlistedMap.size()) {
+			unlistedProperties = unlistedMap.keySet().toArray(new IUnlistedProperty<?>[0]);
+			unlistedPropertyKeys = Collections.unmodifiableList(Arrays.asList(unlistedProperties));
+			emptyUnlistedValues = new Object[unlistedProperties.length];
+		}
+
+		Object[] values = null;
+		for (int i = 0; i < unlistedProperties.length; i++) {
+			Optional<?> optional = unlistedMap.get(unlistedProperties[i]);
+			if (optional != null && optional.isPresent()) {
+				if (values == null) {
+					values = new Object[unlistedProperties.length];
+				}
+				values[i] = optional.get();
+			}
+		}
+
+		return values != null ? values : emptyUnlistedValues;
+	}
+
+	public int getUnlistedIndex(IUnlistedProperty<?> property) {
+		for (int i = 0; i < unlistedProperties.length; i++) {
+			if (unlistedProperties[i] == property) {
+				return i;
+			}
+		}
+
+		for (int i = 0; i < unlistedProperties.length; i++) {
+			if (unlistedProperties[i].equals(property)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	public Collection<IUnlistedProperty<?>> getUnlistedPropertyKeys() {
+		return unlistedPropertyKeys;
+	}
+
+	public ImmutableMap<IUnlistedProperty<?>, Optional<?>> createUnlistedPropertyMap(Object[] values) {
+		ImmutableMap.Builder<IUnlistedProperty<?>, Optional<?>> builder = ImmutableMap.builder();
+		for (int i = 0; i < unlistedProperties.length; i++) {
+			builder.put(unlistedProperties[i], Optional.ofNullable(values[i]));
+		}
+		return builder.build();
+	}
 }
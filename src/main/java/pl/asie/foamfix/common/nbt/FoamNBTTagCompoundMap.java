@@ -19,90 +19,904 @@
 package pl.asie.foamfix.common.nbt;
 
 import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTPrimitive;
+import net.minecraft.nbt.NBTTagString;
+import net.minecraft.util.math.MathHelper;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
 
+/**
+ * The tag map of patched NBTTagCompounds: a linear probing hash table, with
+ * keys and values stored next to each other in one array. Removals shift the
+ * following entries of a probe chain back instead of leaving tombstones, so
+ * lookups never have to walk over deleted slots.
+ *
+ * With compressed references, the map itself takes 40 bytes, and the array
+ * 16 + 8 * capacity bytes, where the capacity is the smallest power of two
+ * that keeps the table at most 3/4 full. Compared to a HashMap with the default
+ * capacity, this is 72 bytes instead of 160 for one entry, 120 instead of 256
+ * for four, 184 instead of 384 for eight and 312 instead of 704 for sixteen.
+ * An empty map is 40 bytes instead of 48.
+ *
+ * Copies are copy-on-write: the copy shares the table array until either side
+ * is mutated or hands out a mutable child tag, at which point that side clones
+ * the array and copies its mutable children. This is only safe as long as
+ * nobody else holds a reference to those children - so a mutable child which
+ * has been put in through the Map interface or handed out by get() is
+ * "escaped", and copies of the table copy it right away instead of sharing
+ * it, while unsharing leaves it in place. Escaped children stay escaped until
+ * they are removed or replaced, as there is no telling when the outside
+ * references go away; an ItemStack whose "display" tag has been read once
+ * still shares everything else with its copies. Iterating over the values or
+ * entries makes every child escape, for as long as the table is not cleared.
+ *
+ * Reading a compound from several threads at once is fine with a HashMap, so
+ * it has to stay fine here, even though the first read of a mutable child
+ * unshares the table. Unsharing, escaping, copying and reading NBTSlices are
+ * therefore done while holding the table's lock, and the new array is published
+ * before the volatile escapedValues or escaped fields are written; a reader
+ * seeing a child as escaped also sees the array it lives in. Unsharing never
+ * replaces escaped children, so they are in whichever array a reader sees.
+ *
+ * Values may also be NBTSlices, compounds which have not been read yet; they
+ * are turned into NBTTagCompounds as soon as anything other than
+ * NBTTagCompound.write, equals or hashCode asks for them.
+ */
 public class FoamNBTTagCompoundMap implements Map<String, NBTBase> {
-	private final FoamNBTTagCompound delegate;
+	private static final Object[] EMPTY = new Object[0];
+	/**
+	 * even fields are keys, odd values
+	 */
+	Object[] data = EMPTY;
+	int size, mask, modCount;
+	/**
+	 * shared - the data array may be used by another table, and must be cloned before any writes
+	 * escaped - every mutable child of this table may be referenced from outside of it
+	 * escapedValues - the mutable children which may be referenced from outside, or null;
+	 *                 never shared with another table
+	 */
+	boolean shared;
+	volatile boolean escaped;
+	volatile Object[] escapedValues;
+	/**
+	 * The cached sum of the Map.hashCode() terms of the children which have not
+	 * escaped, or 0 if not known. Nothing can change those without going through
+	 * the table, which resets it on every change; escaped children are hashed
+	 * anew every time. Not kept at all while every child has escaped.
+	 */
+	int hash;
+
+	public FoamNBTTagCompoundMap() {
+
+	}
+
+	// internal methods
+
+	static int ffHash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean ffIsMutable(Object value) {
+		// NBTBase can't be extended outside of its package, and these are the immutable types there
+		return value != null && !(value instanceof NBTPrimitive) && !(value instanceof NBTTagString) && !(value instanceof NBTSlice);
+	}
+
+	private static boolean ffContainsIdentity(Object[] values, Object value) {
+		if (values != null) {
+			for (Object o : values) {
+				if (o == value) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param escaped Whether to copy the escaped mutable children (true) or the other ones (false).
+	 */
+	private Object[] ffCopyData(boolean escaped) {
+		Object[] copy = data.clone();
+		Object[] escapedValues = this.escaped ? null : this.escapedValues;
+		for (int i = 1; i < copy.length; i += 2) {
+			if (ffIsMutable(copy[i]) && (this.escaped || ffContainsIdentity(escapedValues, copy[i])) == escaped) {
+				copy[i] = ((NBTBase) copy[i]).copy();
+			}
+		}
+		return copy;
+	}
+
+	synchronized void ffUnshare() {
+		if (shared) {
+			// escaped children are never shared, and must stay the same objects
+			data = ffCopyData(false);
+			shared = false;
+		}
+	}
+
+	synchronized void ffEscape() {
+		if (!escaped) {
+			ffUnshare();
+			hash = 0;
+			escaped = true;
+			escapedValues = null;
+		}
+	}
+
+	/**
+	 * Marks a mutable child as escaped. The table must not be shared.
+	 */
+	private synchronized void ffEscape(Object value) {
+		if (!escaped && ffIsMutable(value)) {
+			Object[] values = escapedValues;
+			if (values == null) {
+				escapedValues = new Object[] { value };
+			} else if (!ffContainsIdentity(values, value)) {
+				values = Arrays.copyOf(values, values.length + 1);
+				values[values.length - 1] = value;
+				escapedValues = values;
+			}
+			hash = 0;
+		}
+	}
+
+	/**
+	 * Forgets a child which has been removed or replaced.
+	 */
+	private void ffForget(Object value) {
+		Object[] values = escapedValues;
+		if (values != null && ffContainsIdentity(values, value)) {
+			if (values.length == 1) {
+				escapedValues = null;
+			} else {
+				Object[] newValues = new Object[values.length - 1];
+				int j = 0;
+				for (Object o : values) {
+					if (o != value) {
+						newValues[j++] = o;
+					}
+				}
+				escapedValues = newValues;
+			}
+		}
+	}
+
+	boolean ffHasEscaped() {
+		return escaped || escapedValues != null;
+	}
+
+	/**
+	 * @param target An empty table.
+	 */
+	synchronized void ffCopyInto(FoamNBTTagCompoundMap target) {
+		if (data.length == 0) {
+			target.data = EMPTY;
+		} else {
+			// the escaped children are copied right away, the rest is shared until either side changes
+			target.data = ffHasEscaped() ? ffCopyData(true) : data;
+			if (!escaped) {
+				target.shared = true;
+				shared = true;
+			}
+		}
+		target.size = size;
+		target.mask = mask;
+		target.hash = ffHasEscaped() ? 0 : hash;
+		target.modCount++;
+	}
+
+	private int ffFindSlot(Object key) {
+		if (key == null || size == 0) {
+			return -1;
+		}
+
+		int slot = ffHash(key) & mask;
+		while (true) {
+			Object cmpKey = data[slot << 1];
+			if (cmpKey == null) return -1;
+			if (key.equals(cmpKey)) return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void ffInsertAfterRehash(Object key, Object base) {
+		int slot = ffHash(key) & mask;
+		while (data[slot << 1] != null) {
+			slot = (slot + 1) & mask;
+		}
+		data[slot << 1] = key;
+		data[(slot << 1) | 1] = base;
+		size++;
+	}
+
+	private void ffRehash(int newExpectedSize) {
+		int idealSize = MathHelper.smallestEncompassingPowerOfTwo(((newExpectedSize * 4) + 2) / 3);
+		if (data.length < idealSize * 2) {
+			Object[] oldData = data;
+			data = new Object[idealSize * 2];
+			size = 0;
+			mask = idealSize - 1;
+			for (int i = 0; i < oldData.length; i += 2) {
+				if (oldData[i] != null) {
+					ffInsertAfterRehash(oldData[i], oldData[i|1]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Backward-shift deletion: walk the probe chain after the removed slot and
+	 * move back every entry which would no longer be reachable from its home slot.
+	 *
+	 * @param movedOut If not null, entries moved from before the fence to at or
+	 *                 after it are added here - used by iterators walking downwards.
+	 */
+	private void ffRemoveSlot(int slot, int fence, List<Object> movedOut) {
+		ffUnshare();
+		hash = 0;
+		ffForget(data[(slot << 1) | 1]);
+		int last = slot;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			Object key = data[next << 1];
+			if (key == null) {
+				break;
+			}
+
+			int home = ffHash(key) & mask;
+			// is home cyclically outside of (last, next]? if so, the entry can move to last
+			if (last <= next ? (last >= home || home > next) : (last >= home && home > next)) {
+				data[last << 1] = key;
+				data[(last << 1) | 1] = data[(next << 1) | 1];
+				if (movedOut != null && next < fence && last >= fence) {
+					movedOut.add(key);
+				}
+				last = next;
+			}
+		}
 
-	FoamNBTTagCompoundMap(FoamNBTTagCompound delegate) {
-		this.delegate = delegate;
+		data[last << 1] = null;
+		data[(last << 1) | 1] = null;
+		size--;
+		modCount++;
 	}
 
+	boolean ffContainsKey(Object key) {
+		return ffFindSlot(key) >= 0;
+	}
+
+	private static NBTBase ffToTag(Object value) {
+		return value instanceof NBTSlice ? ((NBTSlice) value).toCompound() : (NBTBase) value;
+	}
+
+	/**
+	 * Gets the value in a slot, reading it first if it's an NBTSlice.
+	 */
+	NBTBase ffValue(int slot) {
+		Object value = data[(slot << 1) | 1];
+		return value instanceof NBTSlice ? ffReadSlice(slot) : (NBTBase) value;
+	}
+
+	private synchronized NBTBase ffReadSlice(int slot) {
+		// the new compound must not end up being shared
+		ffUnshare();
+		Object value = data[(slot << 1) | 1];
+		if (value instanceof NBTSlice) {
+			value = ((NBTSlice) value).toCompound();
+			data[(slot << 1) | 1] = value;
+		}
+		return (NBTBase) value;
+	}
+
+	/**
+	 * Compares two values as stored, without reading NBTSlices into the table.
+	 */
+	static boolean ffValueEquals(Object a, Object b) {
+		if (a instanceof NBTSlice) {
+			return ((NBTSlice) a).tagEquals(b);
+		} else if (b instanceof NBTSlice) {
+			return ((NBTSlice) b).tagEquals(a);
+		} else {
+			return Objects.equals(a, b);
+		}
+	}
+
+	// hashing, comparing and containsValue only read the table - they neither
+	// unshare it nor store the compounds NBTSlices are read into
+
+	int ffHashCode() {
+		// read the escape state first - see ffGetTag
+		boolean escaped = this.escaped;
+		Object[] escapedValues = this.escapedValues;
+		Object[] data = this.data;
+
+		// as specified by Map.hashCode(), so that mixing this with regular maps still works
+		int h = escaped ? 0 : hash;
+		if (h == 0) {
+			for (int i = 0; i < data.length; i += 2) {
+				Object key = data[i];
+				if (key != null && (escaped || !ffContainsIdentity(escapedValues, data[i + 1]))) {
+					h += key.hashCode() ^ Objects.hashCode(data[i + 1]);
+				}
+			}
+			if (!escaped) {
+				ffCacheHash(h, escapedValues);
+			}
+		}
+		if (!escaped && escapedValues != null) {
+			for (int i = 0; i < data.length; i += 2) {
+				Object key = data[i];
+				if (key != null && ffContainsIdentity(escapedValues, data[i + 1])) {
+					h += key.hashCode() ^ data[i + 1].hashCode();
+				}
+			}
+		}
+		return h;
+	}
+
+	private synchronized void ffCacheHash(int h, Object[] escapedValues) {
+		// unless another thread has made a child escape in the meantime
+		if (!escaped && this.escapedValues == escapedValues) {
+			hash = h;
+		}
+	}
+
+	boolean ffEquals(FoamNBTTagCompoundMap other) {
+		if (size != other.size) {
+			return false;
+		} else if (data == other.data) {
+			// copy-on-write copies which neither side changed yet
+			return true;
+		} else if (!escaped && !other.escaped && ffHashCode() != other.ffHashCode()) {
+			// the hashes are mostly cached from now on, until either table changes
+			return false;
+		}
+
+		Object[] data = this.data;
+		for (int i = 0; i < data.length; i += 2) {
+			Object key = data[i];
+			if (key != null) {
+				// unlike get(), this doesn't make the other table escape
+				if (!other.ffContainsEntry(key, data[i + 1])) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param value An NBTBase or an NBTSlice.
+	 */
+	boolean ffContainsEntry(Object key, Object value) {
+		int slot = ffFindSlot(key);
+		return slot >= 0 && ffValueEquals(data[(slot << 1) | 1], value);
+	}
+
+	boolean ffContainsValue(Object value) {
+		Object[] data = this.data;
+		for (int i = 0; i < data.length; i += 2) {
+			if (data[i] != null && ffValueEquals(data[i + 1], value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	NBTBase ffGetTag(Object key) {
+		boolean escaped = this.escaped;
+		Object[] escapedValues = this.escapedValues;
+		int slot = ffFindSlot(key);
+		if (slot < 0) {
+			return null;
+		}
+
+		Object value = data[(slot << 1) | 1];
+		if (value instanceof NBTSlice || (!escaped && ffIsMutable(value) && !ffContainsIdentity(escapedValues, value))) {
+			return ffGetTagEscaping(key);
+		}
+		return (NBTBase) value;
+	}
+
+	/**
+	 * Hands out a mutable child for good - the table must not share it with anything.
+	 */
+	private synchronized NBTBase ffGetTagEscaping(Object key) {
+		ffUnshare();
+		int slot = ffFindSlot(key);
+		if (slot < 0) {
+			return null;
+		}
+
+		NBTBase value = ffValue(slot);
+		ffEscape(value);
+		return value;
+	}
+
+	NBTBase ffPeekTag(Object key) {
+		int slot = ffFindSlot(key);
+		return slot >= 0 ? ffValue(slot) : null;
+	}
+
+	/**
+	 * @return The value as stored - an NBTBase or an NBTSlice.
+	 */
+	Object ffPeekRaw(Object key) {
+		int slot = ffFindSlot(key);
+		return slot >= 0 ? data[(slot << 1) | 1] : null;
+	}
+
+	NBTBase ffPutTag(String key, NBTBase base, boolean owned) {
+		return ffToTag(ffPut(key, base, owned));
+	}
+
+	/**
+	 * @param base An NBTBase or an NBTSlice.
+	 * @param owned Whether the caller guarantees nothing else references base.
+	 * @return The previous value as stored.
+	 */
+	Object ffPut(String key, Object base, boolean owned) {
+		if (key == null) {
+			throw new IllegalArgumentException("key = null");
+		}
+
+		ffUnshare();
+		hash = 0;
+
+		Object oldBase = null;
+		int slot = ffFindSlot(key);
+		if (slot >= 0) {
+			oldBase = data[(slot << 1) | 1];
+			data[(slot << 1) | 1] = base;
+			ffForget(oldBase);
+		} else {
+			ffRehash(size + 1);
+			ffInsertAfterRehash(key, base);
+			modCount++;
+		}
+
+		if (!owned) {
+			ffEscape(base);
+		}
+		return oldBase;
+	}
+
+	NBTBase ffRemove(Object key) {
+		int slot = ffFindSlot(key);
+		if (slot < 0) {
+			return null;
+		}
+
+		ffUnshare();
+		Object base = data[(slot << 1) | 1];
+		ffRemoveSlot(slot, 0, null);
+		return ffToTag(base);
+	}
+
+	void ffClear() {
+		if (size > 0) {
+			modCount++;
+		}
+		data = EMPTY;
+		size = 0;
+		mask = 0;
+		shared = false;
+		escaped = false;
+		escapedValues = null;
+		hash = 0;
+	}
+
+	/**
+	 * Walks the table downwards, so that entries shifted back by a removal are
+	 * never seen twice; the only ones which could be skipped are the ones wrapping
+	 * around the end of the table, and those are collected and returned at the end.
+	 */
+	abstract class SlotIterator<T> implements Iterator<T> {
+		private int pos = data.length >> 1;
+		private int last = -1;
+		private Object lastKey;
+		private List<Object> wrapped;
+		private int wrappedPos;
+		private int expectedModCount = modCount;
+
+		protected abstract T get(Object key);
+
+		protected NBTBase getValue() {
+			return last >= 0 ? ffValue(last) : ffGetTag(lastKey);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (expectedModCount != modCount) {
+				throw new ConcurrentModificationException();
+			}
+
+			while (pos > 0) {
+				if (data[(pos - 1) << 1] != null) {
+					return true;
+				}
+				pos--;
+			}
+
+			return wrapped != null && wrappedPos < wrapped.size();
+		}
+
+		@Override
+		public T next() {
+			if (expectedModCount != modCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			if (pos > 0) {
+				last = --pos;
+				lastKey = data[last << 1];
+				return get(lastKey);
+			} else {
+				last = -1;
+				lastKey = wrapped.get(wrappedPos++);
+				return get(lastKey);
+			}
+		}
+
+		@Override
+		public void remove() {
+			if (lastKey == null) {
+				throw new IllegalStateException();
+			}
+			if (expectedModCount != modCount) {
+				throw new ConcurrentModificationException();
+			}
+
+			if (last >= 0) {
+				if (wrapped == null) {
+					wrapped = new ArrayList<>(2);
+				}
+				ffRemoveSlot(last, last, wrapped);
+			} else {
+				ffRemove(lastKey);
+			}
+			lastKey = null;
+			expectedModCount = modCount;
+		}
+	}
+
+	// Map implementation
+
 	@Override
 	public int size() {
-		return delegate.size;
+		return size;
 	}
 
 	@Override
 	public boolean isEmpty() {
-		return delegate.size == 0;
+		return size == 0;
 	}
 
 	@Override
 	public boolean containsKey(Object key) {
-		return delegate.ffGetTag((String) key) == null;
+		return ffContainsKey(key);
 	}
 
 	@Override
 	public boolean containsValue(Object value) {
-		throw new UnsupportedOperationException();
+		return ffContainsValue(value);
 	}
 
 	@Override
 	public NBTBase get(Object key) {
-		return delegate.ffGetTag((String) key);
+		return ffGetTag(key);
 	}
 
 	@Override
 	public NBTBase put(String key, NBTBase value) {
-		return delegate.ffPutTag(key, value);
+		return ffPutTag(key, value, false);
+	}
+
+	/**
+	 * Gets a tag which will only be read right away, such as to write it out,
+	 * without handing it out for good.
+	 */
+	public NBTBase peek(Object key) {
+		return ffPeekTag(key);
+	}
+
+	/**
+	 * Puts a tag which nothing else holds a reference to, such as one which has
+	 * just been read, without making copies of this map copy their children eagerly.
+	 */
+	public NBTBase putOwned(String key, NBTBase value) {
+		return ffPutTag(key, value, true);
+	}
+
+	/**
+	 * Puts a tag or an NBTSlice read by NBTTagCompound.read.
+	 *
+	 * @return Whether a previous value was replaced.
+	 */
+	public static boolean putRead(Map<String, NBTBase> map, String key, Object tag) {
+		if (map instanceof FoamNBTTagCompoundMap) {
+			return ((FoamNBTTagCompoundMap) map).ffPut(key, tag, true) != null;
+		} else {
+			return map.put(key, tag instanceof NBTSlice ? ((NBTSlice) tag).toCompound() : (NBTBase) tag) != null;
+		}
+	}
+
+	/**
+	 * Gets a tag for NBTTagCompound.write. If it's an NBTSlice, its entry is
+	 * written out as-is right away, and null is returned instead.
+	 */
+	public static NBTBase peekOrWriteSlice(Map<String, NBTBase> map, String key, DataOutput output) throws IOException {
+		if (map instanceof FoamNBTTagCompoundMap) {
+			Object value = ((FoamNBTTagCompoundMap) map).ffPeekRaw(key);
+			if (value instanceof NBTSlice) {
+				output.writeByte(10);
+				output.writeUTF(key);
+				((NBTSlice) value).write(output);
+				return null;
+			} else {
+				return (NBTBase) value;
+			}
+		} else {
+			return map.get(key);
+		}
+	}
+
+	/**
+	 * Makes target a copy-on-write copy of source, if both are FoamFix tag maps.
+	 *
+	 * @return Whether the copy was made.
+	 */
+	public static boolean copyInto(Map<String, NBTBase> source, Map<String, NBTBase> target) {
+		if (source instanceof FoamNBTTagCompoundMap && target instanceof FoamNBTTagCompoundMap) {
+			((FoamNBTTagCompoundMap) source).ffCopyInto((FoamNBTTagCompoundMap) target);
+			return true;
+		} else {
+			return false;
+		}
 	}
 
 	@Override
 	public NBTBase remove(Object key) {
-		return delegate.ffRemove((String) key);
+		return ffRemove(key);
 	}
 
 	@Override
 	public void putAll(Map<? extends String, ? extends NBTBase> map) {
 		for (Map.Entry<? extends String, ? extends NBTBase> entry : map.entrySet()) {
-			// TODO
+			ffPutTag(entry.getKey(), entry.getValue(), false);
 		}
 	}
 
 	@Override
 	public void clear() {
-		delegate.ffClear();
+		ffClear();
 	}
 
+	// the views are created on every call rather than kept in fields, as most
+	// compounds never have them asked for
+
 	@Override
 	public Set<String> keySet() {
-		// TODO: this could be made faster
-		Set<String> keys = new HashSet<>(delegate.data.length);
-		for (int i = 0; i < delegate.data.length; i += 2) {
-			Object key = delegate.data[i];
-			if (key != null) keys.add((String) key);
-		}
-		return keys;
+		return new KeySet();
 	}
 
 	@Override
 	public Collection<NBTBase> values() {
-		throw new UnsupportedOperationException();
+		return new Values();
 	}
 
 	@Override
 	public Set<Entry<String, NBTBase>> entrySet() {
-		throw new UnsupportedOperationException();
+		return new EntrySet();
+	}
+
+	private final class KeySet extends AbstractSet<String> {
+		@Override
+		public Iterator<String> iterator() {
+			return new SlotIterator<String>() {
+				@Override
+				protected String get(Object key) {
+					return (String) key;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return ffContainsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (ffContainsKey(o)) {
+				ffRemove(o);
+				return true;
+			} else {
+				return false;
+			}
+		}
+
+		@Override
+		public void clear() {
+			ffClear();
+		}
+	}
+
+	private final class Values extends AbstractCollection<NBTBase> {
+		@Override
+		public Iterator<NBTBase> iterator() {
+			ffEscape();
+			return new SlotIterator<NBTBase>() {
+				@Override
+				protected NBTBase get(Object key) {
+					return getValue();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return ffContainsValue(o);
+		}
+
+		@Override
+		public void clear() {
+			ffClear();
+		}
+	}
+
+	/**
+	 * NBTTagCompound.equals compares the entry sets of the two tag maps, so those
+	 * compare and hash like the maps do - without iterating over them, which would
+	 * make both tables escape.
+	 */
+	private final class EntrySet extends AbstractSet<Entry<String, NBTBase>> {
+		private FoamNBTTagCompoundMap getMap() {
+			return FoamNBTTagCompoundMap.this;
+		}
+
+		@Override
+		public Iterator<Entry<String, NBTBase>> iterator() {
+			ffEscape();
+			return new SlotIterator<Entry<String, NBTBase>>() {
+				@Override
+				protected Entry<String, NBTBase> get(Object key) {
+					return new TagEntry((String) key, getValue());
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+
+			Entry<?, ?> entry = (Entry<?, ?>) o;
+			return ffContainsEntry(entry.getKey(), entry.getValue());
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (contains(o)) {
+				ffRemove(((Entry<?, ?>) o).getKey());
+				return true;
+			} else {
+				return false;
+			}
+		}
+
+		@Override
+		public void clear() {
+			ffClear();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			} else if (o instanceof EntrySet) {
+				return ffEquals(((EntrySet) o).getMap());
+			} else {
+				// size check, then contains() for every entry of o
+				return super.equals(o);
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return ffHashCode();
+		}
+	}
+
+	private final class TagEntry implements Entry<String, NBTBase> {
+		private final String key;
+		private NBTBase value;
+
+		TagEntry(String key, NBTBase value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public NBTBase getValue() {
+			return value;
+		}
+
+		@Override
+		public NBTBase setValue(NBTBase value) {
+			// replacing a value does not move entries around, so this is safe during iteration
+			this.value = value;
+			return ffPutTag(key, value, false);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Entry)) {
+				return false;
+			}
+
+			Entry<?, ?> other = (Entry<?, ?>) obj;
+			return key.equals(other.getKey()) && Objects.equals(value, other.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ Objects.hashCode(value);
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
 	}
 
 	@Override
 	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (obj instanceof FoamNBTTagCompoundMap) {
+			return ffEquals((FoamNBTTagCompoundMap) obj);
+		}
 		if (!(obj instanceof Map)) {
 			return false;
 		}
@@ -112,11 +926,12 @@ public class FoamNBTTagCompoundMap implements Map<String, NBTBase> {
 			return false;
 		}
 
-		for (int i = 0; i < delegate.data.length; i += 2) {
-			Object key = delegate.data[i];
+		Object[] data = this.data;
+		for (int i = 0; i < data.length; i += 2) {
+			Object key = data[i];
 			if (key != null) {
-				Object value = delegate.data[i + 1];
-				if (!Objects.equals(other.get(key), value)) {
+				Object value = data[i + 1];
+				if (!ffValueEquals(value, other.get(key)) || (value == null && !other.containsKey(key))) {
 					return false;
 				}
 			}
@@ -128,14 +943,18 @@ public class FoamNBTTagCompoundMap implements Map<String, NBTBase> {
 
 	@Override
 	public int hashCode() {
-		int hash = 0;
-		for (int i = 0; i < delegate.data.length; i += 2) {
-			Object key = delegate.data[i];
-			if (key != null) {
-				Object value = delegate.data[i + 1];
-				hash += key.hashCode() + (value != null ? value.hashCode() : 0);
+		return ffHashCode();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("{");
+		for (Entry<String, NBTBase> entry : entrySet()) {
+			if (builder.length() > 1) {
+				builder.append(", ");
 			}
+			builder.append(entry.getKey()).append('=').append(entry.getValue());
 		}
-		return hash;
+		return builder.append('}').toString();
 	}
 }
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.common.nbt;
+
+import net.minecraft.util.math.MathHelper;
+import pl.asie.foamfix.shared.FoamFixShared;
+
+/**
+ * Canonicalizes NBT compound keys as they are read, so that the same few hundred
+ * key strings are not kept around millions of times.
+ *
+ * The table is a fixed-size, 2-way set associative cache owned by FoamFix - it never
+ * grows, which keeps arbitrary keys coming from the network out of the JVM's string
+ * table. Each set keeps its most recently used key first; a key which is not in its
+ * set replaces the less recently used one, so a key seen once early on cannot keep
+ * a frequently read one out for good. Losing a race between two threads only means
+ * one of them keeps its own copy, or a set briefly holds the same key twice.
+ */
+public final class NBTKeyInterner {
+	private static final int MAX_KEY_LENGTH = 64;
+	// two slots per set - the most recently used key first
+	private static final String[] table;
+	private static final int mask;
+
+	static {
+		int size = FoamFixShared.config.geNBTKeyCacheSize;
+		if (size > 0) {
+			size = Math.max(2, MathHelper.smallestEncompassingPowerOfTwo(size));
+			table = new String[size];
+			mask = (size >> 1) - 1;
+		} else {
+			table = null;
+			mask = 0;
+		}
+	}
+
+	private NBTKeyInterner() {
+
+	}
+
+	public static String intern(String key) {
+		String[] table = NBTKeyInterner.table;
+		if (table == null || key == null || key.length() > MAX_KEY_LENGTH) {
+			return key;
+		}
+
+		int h = key.hashCode();
+		int slot = ((h ^ (h >>> 16)) & mask) << 1;
+		String first = table[slot];
+		if (key.equals(first)) {
+			return first;
+		}
+
+		String second = table[slot + 1];
+		if (key.equals(second)) {
+			table[slot] = second;
+			table[slot + 1] = first;
+			return second;
+		}
+
+		table[slot] = key;
+		table[slot + 1] = first;
+		return key;
+	}
+}
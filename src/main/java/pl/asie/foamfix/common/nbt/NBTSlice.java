@@ -0,0 +1,555 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.common.nbt;
+
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTSizeTracker;
+import net.minecraft.nbt.NBTTagCompound;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+
+/**
+ * A compound tag kept as the bytes it was read from, until something needs it.
+ * Reading one only checks the structure of the subtree, copying it over without
+ * creating any tags or strings; unchanged slices are written back as they were.
+ *
+ * Compounds are only sliced when read with NBTSizeTracker.INFINITE, which is what
+ * CompressedStreamTools uses for files - anything read with a limit, such as
+ * network data, is read by vanilla as usual, so that it is accounted for the same
+ * way. Whether a compound is large enough to be worth slicing is decided by
+ * peeking at up to MIN_SIZE bytes of it without copying them, which needs an
+ * input supporting mark/reset; smaller ones are read by vanilla right away.
+ *
+ * The compounds directly in a file's root compound, such as a chunk's "Level"
+ * or level.dat's "Data", are never sliced: the game reads them as soon as the
+ * file is loaded, so slicing them would only add a scan and a copy. Neither are
+ * the compounds in lists, which is where chunks keep their tile entities and
+ * entities - those get read right away as well. What does pay off is the data
+ * nested in those which nobody looks at, such as the contents of a shulker box
+ * lying in a chest.
+ *
+ * While scanning, the bounds of nested compounds of over MIN_SIZE bytes are
+ * recorded, so that reading a slice turns those into slices of their own without
+ * scanning them again. Their bytes are copied out, so that an unread nested
+ * compound does not keep the rest of the array alive.
+ *
+ * Slices are immutable, so copy-on-write tables can share them freely.
+ */
+public final class NBTSlice {
+	private static final int MAX_DEPTH = 512;
+	/**
+	 * Compounds at a lower depth are read right away - see above.
+	 */
+	private static final int MIN_DEPTH = 2;
+	/**
+	 * Compounds of up to this many bytes are read right away - there's little to save on them.
+	 */
+	public static final int MIN_SIZE = 256;
+	// a peek may read a few bytes of tag headers past MIN_SIZE before it stops
+	private static final int PEEK_LIMIT = MIN_SIZE + 16;
+	// TAG_Compound with an empty name, for CompressedStreamTools.read
+	private static final byte[] HEADER = { 10, 0, 0 };
+	private static final int[] NO_INDEX = new int[0];
+
+	private final byte[] data;
+	/**
+	 * Pairs of start and end offsets in data of nested compounds, sorted by start.
+	 */
+	private final int[] index;
+	// hash code of the compound, or 0 if not known yet
+	private int hash;
+
+	private NBTSlice(byte[] data, int[] index) {
+		this.data = data;
+		this.index = index;
+	}
+
+	/**
+	 * Reads the payload of a compound tag, if it should be kept as an NBTSlice.
+	 *
+	 * @return An NBTSlice, or null if nothing was read - the compound should then be read as usual.
+	 */
+	public static NBTSlice read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
+		if (input instanceof SliceInput) {
+			return ((SliceInput) input).readNested();
+		} else if (depth < MIN_DEPTH || sizeTracker != NBTSizeTracker.INFINITE
+				|| !(input instanceof InputStream) || !((InputStream) input).markSupported()) {
+			return null;
+		}
+
+		InputStream stream = (InputStream) input;
+		stream.mark(PEEK_LIMIT);
+		Scanner peek = new Scanner(input, false);
+		try {
+			peek.scanCompound(depth);
+		} catch (IOException | RuntimeException e) {
+			// leave reporting it to vanilla
+			stream.reset();
+			return null;
+		}
+		stream.reset();
+		if (!peek.full) {
+			return null;
+		}
+
+		Scanner scanner = new Scanner(input, true);
+		scanner.scanCompound(depth);
+		return new NBTSlice(Arrays.copyOf(scanner.data, scanner.length),
+				scanner.indexLength > 0 ? Arrays.copyOf(scanner.index, scanner.indexLength << 1) : NO_INDEX);
+	}
+
+	public NBTTagCompound toCompound() {
+		try {
+			// slices are only made from data read without a size limit
+			return CompressedStreamTools.read(SliceInput.open(this), NBTSizeTracker.INFINITE);
+		} catch (IOException e) {
+			// the structure has already been checked while reading
+			throw new RuntimeException(e);
+		}
+	}
+
+	public void write(DataOutput output) throws IOException {
+		output.write(data);
+	}
+
+	public int getSize() {
+		return data.length;
+	}
+
+	/**
+	 * @return The hash code of the NBTTagCompound this slice reads as, computed
+	 * from the bytes the same way the tags compute theirs.
+	 */
+	@Override
+	public int hashCode() {
+		int h = hash;
+		if (h == 0) {
+			try {
+				h = new Hasher(data).hashCompound();
+			} catch (DuplicateKeyException e) {
+				// the later entry wins once read, and only the compound knows which one that is
+				h = toCompound().hashCode();
+			}
+			hash = h;
+		}
+		return h;
+	}
+
+	/**
+	 * @param other An NBTBase or an NBTSlice.
+	 * @return Whether the NBTTagCompound this slice reads as is equal to other.
+	 */
+	public boolean tagEquals(Object other) {
+		if (other == this) {
+			return true;
+		} else if (other instanceof NBTSlice) {
+			NBTSlice slice = (NBTSlice) other;
+			if (Arrays.equals(data, slice.data)) {
+				return true;
+			} else if (hashCode() != slice.hashCode()) {
+				return false;
+			}
+			return toCompound().equals(slice.toCompound());
+		} else if (other instanceof NBTTagCompound) {
+			return hashCode() == other.hashCode() && toCompound().equals(other);
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * @return The first pair in the index starting at or after offset.
+	 */
+	private int findIndex(int offset) {
+		int lo = 0, hi = index.length >> 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (index[mid << 1] < offset) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private static void checkDepth(int depth) {
+		if (depth > MAX_DEPTH) {
+			throw new RuntimeException("Tried to read NBT tag with too high complexity, depth > " + MAX_DEPTH);
+		}
+	}
+
+	/**
+	 * Reads a slice back, through the same NBTTagCompound.read calls that made it.
+	 */
+	private static final class SliceInput extends DataInputStream {
+		private final NBTSlice slice;
+		private final PositionStream stream;
+
+		private SliceInput(NBTSlice slice, PositionStream stream) {
+			super(new SequenceInputStream(new ByteArrayInputStream(HEADER), stream));
+			this.slice = slice;
+			this.stream = stream;
+		}
+
+		static SliceInput open(NBTSlice slice) {
+			return new SliceInput(slice, new PositionStream(slice.data));
+		}
+
+		/**
+		 * @return The compound starting at the current position as an NBTSlice, if it was large enough to be indexed.
+		 */
+		NBTSlice readNested() {
+			int[] index = slice.index;
+			int position = stream.position();
+			int i = slice.findIndex(position);
+			if (i >= (index.length >> 1) || index[i << 1] != position) {
+				return null;
+			}
+
+			int nestedEnd = index[(i << 1) | 1];
+			stream.skip(nestedEnd - position);
+
+			// the pairs after i up to nestedEnd lie within the nested compound
+			int[] nestedIndex = NO_INDEX;
+			int to = slice.findIndex(nestedEnd);
+			if (to > i + 1) {
+				nestedIndex = Arrays.copyOfRange(index, (i + 1) << 1, to << 1);
+				for (int j = 0; j < nestedIndex.length; j++) {
+					nestedIndex[j] -= position;
+				}
+			}
+			return new NBTSlice(Arrays.copyOfRange(slice.data, position, nestedEnd), nestedIndex);
+		}
+	}
+
+	private static final class DuplicateKeyException extends RuntimeException {
+		DuplicateKeyException() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * Walks a slice's payload, adding up hash codes as NBTBase.hashCode and its
+	 * overrides do - each tag's type ID, XORed with the hash code of its value,
+	 * where compounds and lists use Map.hashCode and List.hashCode. The structure
+	 * was checked when the slice was read, so this trusts it.
+	 */
+	private static final class Hasher {
+		private final byte[] data;
+		private int pos;
+		// hash codes of the keys of the compounds being walked, to catch duplicates
+		private int[] keys = new int[16];
+		private int keyCount;
+
+		Hasher(byte[] data) {
+			this.data = data;
+		}
+
+		int hashCompound() {
+			int keysFrom = keyCount;
+			int h = 0;
+			byte type;
+			while ((type = data[pos++]) != 0) {
+				int key = hashString();
+				for (int i = keysFrom; i < keyCount; i++) {
+					if (keys[i] == key) {
+						throw new DuplicateKeyException();
+					}
+				}
+				if (keyCount == keys.length) {
+					keys = Arrays.copyOf(keys, keyCount << 1);
+				}
+				keys[keyCount++] = key;
+				h += key ^ hashTag(type);
+			}
+			keyCount = keysFrom;
+			return 10 ^ h;
+		}
+
+		private int hashTag(byte type) {
+			switch (type) {
+				case 1: return 1 ^ data[pos++];
+				case 2: return 2 ^ (short) readUnsignedShort();
+				case 3: return 3 ^ readInt();
+				case 4: return 4 ^ hashLong(readLong());
+				case 5: return 5 ^ Float.floatToIntBits(Float.intBitsToFloat(readInt()));
+				case 6: return 6 ^ hashLong(Double.doubleToLongBits(Double.longBitsToDouble(readLong())));
+				case 7: {
+					int h = 1;
+					for (int i = readInt(); i > 0; i--) {
+						h = 31 * h + data[pos++];
+					}
+					return 7 ^ h;
+				}
+				case 8: return 8 ^ hashString();
+				case 9: {
+					byte elementType = data[pos++];
+					int h = 1;
+					for (int i = readInt(); i > 0; i--) {
+						h = 31 * h + hashTag(elementType);
+					}
+					return 9 ^ h;
+				}
+				case 10: return hashCompound();
+				case 11: {
+					int h = 1;
+					for (int i = readInt(); i > 0; i--) {
+						h = 31 * h + readInt();
+					}
+					return 11 ^ h;
+				}
+				case 12: {
+					int h = 1;
+					for (int i = readInt(); i > 0; i--) {
+						h = 31 * h + hashLong(readLong());
+					}
+					return 12 ^ h;
+				}
+				default:
+					throw new IllegalStateException("Invalid NBT tag type " + type);
+			}
+		}
+
+		private static int hashLong(long v) {
+			return (int) (v ^ (v >>> 32));
+		}
+
+		/**
+		 * @return String.hashCode() of the modified UTF-8 string at pos, as DataInput.readUTF decodes it.
+		 */
+		private int hashString() {
+			int length = readUnsignedShort();
+			int end = pos + length;
+			int h = 0;
+			while (pos < end) {
+				int c = data[pos++] & 0xFF;
+				if (c >= 0xE0) {
+					c = ((c & 0x0F) << 12) | ((data[pos] & 0x3F) << 6) | (data[pos + 1] & 0x3F);
+					pos += 2;
+				} else if (c >= 0xC0) {
+					c = ((c & 0x1F) << 6) | (data[pos++] & 0x3F);
+				}
+				h = 31 * h + c;
+			}
+			return h;
+		}
+
+		private int readUnsignedShort() {
+			int v = ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+			pos += 2;
+			return v;
+		}
+
+		private int readInt() {
+			int v = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16) | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+			pos += 4;
+			return v;
+		}
+
+		private long readLong() {
+			return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+		}
+	}
+
+	private static final class PositionStream extends ByteArrayInputStream {
+		PositionStream(byte[] buf) {
+			super(buf);
+		}
+
+		int position() {
+			return pos;
+		}
+	}
+
+	/**
+	 * Walks the structure of a compound's payload. When copying, the bytes go into
+	 * data and large nested compounds into index; when peeking, they're skipped,
+	 * and the walk stops as soon as the payload turns out to be over MIN_SIZE bytes.
+	 */
+	private static final class Scanner {
+		private final DataInput input;
+		private final boolean copying;
+		private byte[] data;
+		private int length;
+		private int[] index;
+		private int indexLength;
+		private boolean full;
+
+		Scanner(DataInput input, boolean copying) {
+			this.input = input;
+			this.copying = copying;
+			if (copying) {
+				data = new byte[512];
+				index = new int[16];
+			}
+		}
+
+		void scanCompound(int depth) throws IOException {
+			checkDepth(depth);
+			while (!full) {
+				byte type = input.readByte();
+				write(type);
+				if (type == 0) {
+					return;
+				}
+
+				copy(input.readUnsignedShort(), 2);
+				if (type == 10 && copying) {
+					int entry = beginIndex();
+					scanCompound(depth + 1);
+					endIndex(entry);
+				} else {
+					scanPayload(type, depth + 1);
+				}
+			}
+		}
+
+		private void scanPayload(byte type, int depth) throws IOException {
+			switch (type) {
+				case 1: copy(1, 0); break;
+				case 2: copy(2, 0); break;
+				case 3:
+				case 5: copy(4, 0); break;
+				case 4:
+				case 6: copy(8, 0); break;
+				case 7: copy(readLength(), 0); break;
+				case 8: copy(input.readUnsignedShort(), 2); break;
+				case 9: {
+					checkDepth(depth);
+					byte elementType = input.readByte();
+					write(elementType);
+					int count = readLength();
+					if (elementType == 0 && count > 0) {
+						throw new RuntimeException("Missing type on ListTag");
+					}
+					for (int i = 0; i < count && !full; i++) {
+						scanPayload(elementType, depth + 1);
+					}
+					break;
+				}
+				case 10: scanCompound(depth); break;
+				case 11: copy(checkedMultiply(readLength(), 4), 0); break;
+				case 12: copy(checkedMultiply(readLength(), 8), 0); break;
+				default:
+					throw new IOException("Invalid NBT tag type " + type);
+			}
+		}
+
+		private int readLength() throws IOException {
+			int length = input.readInt();
+			if (length < 0) {
+				throw new IOException("Negative NBT array length " + length);
+			}
+			writeInt(length);
+			return length;
+		}
+
+		private static int checkedMultiply(int length, int size) throws IOException {
+			if (length > Integer.MAX_VALUE / size) {
+				throw new IOException("NBT array too long: " + length);
+			}
+			return length * size;
+		}
+
+		private int beginIndex() {
+			if ((indexLength << 1) == index.length) {
+				index = Arrays.copyOf(index, index.length << 1);
+			}
+			index[indexLength << 1] = length;
+			return indexLength++;
+		}
+
+		private void endIndex(int entry) {
+			if (length - index[entry << 1] <= MIN_SIZE) {
+				// anything nested in it is smaller still, and was dropped already
+				indexLength = entry;
+			} else {
+				index[(entry << 1) | 1] = length;
+			}
+		}
+
+		/**
+		 * @return Whether there is room for len more bytes - when peeking, false marks the scan as done.
+		 */
+		private boolean reserve(int len) throws IOException {
+			if (!copying) {
+				if (len > MIN_SIZE - length) {
+					full = true;
+					return false;
+				}
+			} else if (len > Integer.MAX_VALUE - 8 - length) {
+				throw new IOException("NBT subtree too large");
+			} else if (length + len > data.length) {
+				data = Arrays.copyOf(data, Math.max(length + len, data.length + (data.length >> 1)));
+			}
+			return true;
+		}
+
+		private void write(int b) throws IOException {
+			if (reserve(1)) {
+				if (copying) {
+					data[length] = (byte) b;
+				}
+				length++;
+			}
+		}
+
+		private void writeInt(int v) throws IOException {
+			if (reserve(4)) {
+				if (copying) {
+					data[length] = (byte) (v >>> 24);
+					data[length + 1] = (byte) (v >>> 16);
+					data[length + 2] = (byte) (v >>> 8);
+					data[length + 3] = (byte) v;
+				}
+				length += 4;
+			}
+		}
+
+		/**
+		 * Copies len bytes from the input, preceded by the big-endian length prefix
+		 * of prefixSize bytes if any.
+		 */
+		private void copy(int len, int prefixSize) throws IOException {
+			if (!reserve(len + prefixSize)) {
+				return;
+			}
+
+			if (copying) {
+				if (prefixSize == 2) {
+					data[length] = (byte) (len >>> 8);
+					data[length + 1] = (byte) len;
+				}
+				input.readFully(data, length + prefixSize, len);
+			} else if (input.skipBytes(len) != len) {
+				throw new EOFException();
+			}
+			length += len + prefixSize;
+		}
+	}
+}
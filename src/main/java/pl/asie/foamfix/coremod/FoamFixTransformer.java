@@ -310,11 +310,41 @@ public class FoamFixTransformer implements IClassTransformer {
             }
         }
 
+        if (FoamFixShared.config.geInternBlockProperties) {
+            patchy.addTransformerId("internBlockProperties_v1");
+            for (String s : new String[] { "net.minecraft.block.properties.PropertyBool", "net.minecraft.block.properties.PropertyInteger", "net.minecraft.block.properties.PropertyEnum" }) {
+                handlerCN.add(new PropertyInternPatch(), s);
+            }
+        }
+
         if (FoamFixShared.config.geFasterEntityDataManager) {
             patchy.addTransformerId("fasterEntityDataManager_v1");
             handlerCN.add(new EntityDataManagerPatch(), "net.minecraft.network.datasync.EntityDataManager");
         }
 
+        if (FoamFixShared.config.geSmallNBTCompounds) {
+            patchy.addTransformerId("smallNBTCompounds_v1");
+            handlerCN.add(new NBTTagCompoundPatch(), "net.minecraft.nbt.NBTTagCompound");
+
+            if (FoamFixShared.config.geCopyOnWriteNBTCompounds) {
+                patchy.addTransformerId("copyOnWriteNBTCompounds_v1");
+                handlerCN.add(new NBTTagCompoundCopyOnWritePatch(), "net.minecraft.nbt.NBTTagCompound");
+                handlerCN.add(data -> spliceClasses(data, "pl.asie.foamfix.coremod.injections.NBTTagCompoundCopyInject",
+                        false, "copy", "func_74737_b"), "net.minecraft.nbt.NBTTagCompound");
+            }
+
+            if (FoamFixShared.config.geLazyNBTCompounds) {
+                patchy.addTransformerId("lazyNBTCompounds_v1");
+                handlerCN.add(data -> spliceClasses(data, "pl.asie.foamfix.coremod.injections.NBTTagCompoundLazyInject",
+                        false, "read", "func_152446_a", "write", "func_74734_a"), "net.minecraft.nbt.NBTTagCompound");
+            }
+        }
+
+        if (FoamFixShared.config.geNBTKeyCacheSize > 0) {
+            patchy.addTransformerId("internNBTKeys_v1");
+            handlerCN.add(new NBTKeyInternPatch(), "net.minecraft.nbt.NBTTagCompound");
+        }
+
         patchy.addTransformerId("disableTextureAnimations_v1");
         handlerCN.add(new ReturnIfBooleanTruePatch("clDisableTextureAnimations", "updateAnimations", "func_94248_c"),
                 "net.minecraft.client.renderer.texture.TextureMap");
@@ -345,6 +375,13 @@ public class FoamFixTransformer implements IClassTransformer {
             ), "net.minecraft.client.renderer.texture.TextureAtlasSprite");
         }
 
+        if (FoamFixShared.config.txEnable && FoamFixShared.config.txInvisibleAnimationTimeout > 0) {
+            patchy.addTransformerId("invisibleAnimationTimeout_v3");
+            handlerCN.add(new AnimationVisibilityPatch(), "net.minecraft.client.renderer.chunk.RenderChunk");
+            handlerCN.add(new AnimationVisibilityPatch(), "net.minecraft.client.renderer.BlockModelRenderer");
+            handlerCN.add(new AnimationVisibilityPatch(), "net.minecraft.client.renderer.RenderItem");
+        }
+
         if (FoamFixShared.config.geMobSpawnerCheckSpeed > 2) {
             patchy.addTransformerId("geMobSpawnerCheckSpeed_v2");
             handlerCN.add(data -> spliceClasses(data, "pl.asie.foamfix.coremod.injections.CachingMobSpawnerLogicInject",
@@ -400,6 +437,16 @@ public class FoamFixTransformer implements IClassTransformer {
                     "net.minecraftforge.client.model.ModelLoader$VanillaModelWrapper");
         }
 
+        if (FoamFixShared.config.clCacheParsedModels) {
+            patchy.addTransformerId("cacheParsedModels_v1");
+            handlerCN.add(new ParsedModelCachePatch(), "net.minecraft.client.renderer.block.model.ModelBakery");
+        }
+
+        if (FoamFixShared.config.clParallelModelBaking > 0) {
+            patchy.addTransformerId("parallelModelBaking_v1");
+            handlerCN.add(new ParallelModelBakePatch(), "net.minecraftforge.client.model.ModelLoader");
+        }
+
         if (FoamFixShared.config.clClearCachesOnUnload) {
             patchy.addTransformerId("clearCachesOnUnload_v2");
             handlerCN.add((data) -> spliceClasses(data, "pl.asie.foamfix.coremod.injections.client.AnimationModelBaseClearCacheInject",
@@ -16,12 +16,28 @@
  * You should have received a copy of the GNU Lesser General Public License
  * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
  */
-package pl.asie.foamfix.common.nbt;
+package pl.asie.foamfix.coremod.injections;
 
 import net.minecraft.nbt.NBTBase;
+import pl.asie.foamfix.common.nbt.FoamNBTTagCompoundMap;
 
 import java.util.Map;
 
-public interface IFoamFixNBTTagCompound {
-	Map<String, NBTBase> foamfix_getTagMap();
+public class NBTTagCompoundCopyInject {
+	private Map<String, NBTBase> tagMap;
+	private Map<String, NBTBase> field_74784_a;
+
+	public NBTTagCompoundCopyInject copy() {
+		NBTTagCompoundCopyInject compound = new NBTTagCompoundCopyInject();
+		return FoamNBTTagCompoundMap.copyInto(tagMap, compound.tagMap) ? compound : copy_foamfix_old();
+	}
+
+	public NBTTagCompoundCopyInject func_74737_b() {
+		NBTTagCompoundCopyInject compound = new NBTTagCompoundCopyInject();
+		return FoamNBTTagCompoundMap.copyInto(field_74784_a, compound.field_74784_a) ? compound : copy_foamfix_old();
+	}
+
+	public NBTTagCompoundCopyInject copy_foamfix_old() {
+		return null;
+	}
 }
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.coremod.injections;
+
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTSizeTracker;
+import pl.asie.foamfix.common.nbt.FoamNBTTagCompoundMap;
+import pl.asie.foamfix.common.nbt.NBTSlice;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+
+public class NBTTagCompoundLazyInject {
+	private Map<String, NBTBase> tagMap;
+	private Map<String, NBTBase> field_74784_a;
+
+	void write(DataOutput output) throws IOException {
+		for (String key : this.tagMap.keySet()) {
+			NBTBase tag = FoamNBTTagCompoundMap.peekOrWriteSlice(this.tagMap, key, output);
+			if (tag != null) {
+				writeEntry(key, tag, output);
+			}
+		}
+
+		output.writeByte(0);
+	}
+
+	void func_74734_a(DataOutput output) throws IOException {
+		for (String key : this.field_74784_a.keySet()) {
+			NBTBase tag = FoamNBTTagCompoundMap.peekOrWriteSlice(this.field_74784_a, key, output);
+			if (tag != null) {
+				func_150298_a(key, tag, output);
+			}
+		}
+
+		output.writeByte(0);
+	}
+
+	void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
+		sizeTracker.read(384L);
+
+		if (depth > 512) {
+			throw new RuntimeException("Tried to read NBT tag with too high complexity, depth > 512");
+		} else {
+			this.tagMap.clear();
+			byte type;
+
+			while ((type = readType(input, sizeTracker)) != 0) {
+				String key = readKey(input, sizeTracker);
+				sizeTracker.read((long) (224 + 16 * key.length()));
+				Object tag = type == 10 ? NBTSlice.read(input, depth + 1, sizeTracker) : null;
+				if (tag == null) {
+					tag = readNBT(type, key, input, depth + 1, sizeTracker);
+				}
+
+				if (FoamNBTTagCompoundMap.putRead(this.tagMap, key, tag)) {
+					sizeTracker.read(288L);
+				}
+			}
+		}
+	}
+
+	void func_152446_a(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
+		sizeTracker.read(384L);
+
+		if (depth > 512) {
+			throw new RuntimeException("Tried to read NBT tag with too high complexity, depth > 512");
+		} else {
+			this.field_74784_a.clear();
+			byte type;
+
+			while ((type = func_152447_a(input, sizeTracker)) != 0) {
+				String key = func_152448_b(input, sizeTracker);
+				sizeTracker.read((long) (224 + 16 * key.length()));
+				Object tag = type == 10 ? NBTSlice.read(input, depth + 1, sizeTracker) : null;
+				if (tag == null) {
+					tag = func_152449_a(type, key, input, depth + 1, sizeTracker);
+				}
+
+				if (FoamNBTTagCompoundMap.putRead(this.field_74784_a, key, tag)) {
+					sizeTracker.read(288L);
+				}
+			}
+		}
+	}
+
+	// stubs for NBTTagCompound's own methods
+
+	private static void writeEntry(String name, NBTBase data, DataOutput output) throws IOException {
+
+	}
+
+	private static void func_150298_a(String name, NBTBase data, DataOutput output) throws IOException {
+
+	}
+
+	private static byte readType(DataInput input, NBTSizeTracker sizeTracker) throws IOException {
+		return 0;
+	}
+
+	private static byte func_152447_a(DataInput input, NBTSizeTracker sizeTracker) throws IOException {
+		return 0;
+	}
+
+	private static String readKey(DataInput input, NBTSizeTracker sizeTracker) throws IOException {
+		return null;
+	}
+
+	private static String func_152448_b(DataInput input, NBTSizeTracker sizeTracker) throws IOException {
+		return null;
+	}
+
+	static NBTBase readNBT(byte id, String key, DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
+		return null;
+	}
+
+	static NBTBase func_152449_a(byte id, String key, DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
+		return null;
+	}
+}
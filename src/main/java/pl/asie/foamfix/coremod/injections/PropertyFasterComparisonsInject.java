@@ -27,7 +27,6 @@ import net.minecraft.util.IStringSerializable;
 import java.util.Collection;
 
 public class PropertyFasterComparisonsInject {
-    // TODO: Staticify allowedValues as it's the same
     public static class Bool extends PropertyHelper<Boolean> {
         protected Bool(String name) {
             super(name, Boolean.class);
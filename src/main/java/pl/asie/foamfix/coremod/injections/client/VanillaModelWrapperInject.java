@@ -27,6 +27,7 @@ import net.minecraftforge.client.model.PerspectiveMapWrapper;
 import net.minecraftforge.client.model.animation.ModelBlockAnimation;
 import net.minecraftforge.common.model.IModelState;
 import net.minecraftforge.common.model.TRSRTransformation;
+import pl.asie.foamfix.client.TransformInterner;
 import pl.asie.foamfix.util.FoamUtils;
 
 import java.util.List;
@@ -39,7 +40,7 @@ public class VanillaModelWrapperInject {
 		IBakedModel bakedModel = bakeNormal_foamfix_old(model, perState, modelState, newTransforms, format, bakedTextureGetter, uvLocked);
 		if (bakedModel instanceof PerspectiveMapWrapper && (animation == null || animation.getClips().isEmpty())) {
 			try {
-				return new PerspectiveMapWrapper((IBakedModel) FoamUtils.PMW_GET_PARENT.invokeExact((PerspectiveMapWrapper) bakedModel), perState);
+				return new PerspectiveMapWrapper((IBakedModel) FoamUtils.PMW_GET_PARENT.invokeExact((PerspectiveMapWrapper) bakedModel), TransformInterner.intern(PerspectiveMapWrapper.getTransforms(perState)));
 			} catch (Throwable t) {
 				t.printStackTrace();
 				return bakedModel;
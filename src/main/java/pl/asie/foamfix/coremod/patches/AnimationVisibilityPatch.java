@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.coremod.patches;
+
+import com.google.common.collect.ImmutableSet;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+import pl.asie.patchy.TransformerFunction;
+
+import java.util.ListIterator;
+import java.util.Set;
+
+/**
+ * Hooks for AnimationVisibilityTracker: brackets RenderChunk.rebuildChunk (also when it
+ * throws), wraps the models drawn by BlockModelRenderer.renderModel so that the sprites of
+ * the quads they emit are collected, and marks the sprites of quads rendered by
+ * BlockModelRenderer.renderModelBrightnessColorQuads and RenderItem.renderQuads.
+ * The BlockModelRenderer methods are found by their descriptors, which are unique there.
+ */
+public class AnimationVisibilityPatch implements TransformerFunction<ClassNode> {
+	private static final String TRACKER = "pl/asie/foamfix/client/AnimationVisibilityTracker";
+	private static final Set<String> REBUILD_CHUNK = ImmutableSet.of("rebuildChunk", "func_178581_b");
+	private static final Set<String> RENDER_QUADS = ImmutableSet.of("renderQuads", "func_191970_a");
+	private static final String BLOCK_MODEL_RENDERER = "net/minecraft/client/renderer/BlockModelRenderer";
+	private static final String RENDER_MODEL_DESC = "(Lnet/minecraft/world/IBlockAccess;Lnet/minecraft/client/renderer/block/model/IBakedModel;Lnet/minecraft/block/state/IBlockState;Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/client/renderer/BufferBuilder;ZJ)Z";
+	private static final String RENDER_BRIGHTNESS_QUADS_DESC = "(FFFFLjava/util/List;)V";
+	private static final String RENDER_QUADS_DESC = "(Lnet/minecraft/client/renderer/BufferBuilder;Ljava/util/List;ILnet/minecraft/item/ItemStack;)V";
+
+	private static InsnList createMarkQuads(int listIndex) {
+		InsnList list = new InsnList();
+		list.add(new VarInsnNode(Opcodes.ALOAD, listIndex));
+		list.add(new MethodInsnNode(Opcodes.INVOKESTATIC, TRACKER, "markQuads", "(Ljava/util/List;)V", false));
+		return list;
+	}
+
+	private static void patchRebuildChunk(ClassNode classNode, MethodNode methodNode) {
+		ListIterator<AbstractInsnNode> it = methodNode.instructions.iterator();
+		while (it.hasNext()) {
+			AbstractInsnNode node = it.next();
+			if (node.getOpcode() == Opcodes.RETURN) {
+				InsnList list = new InsnList();
+				list.add(new VarInsnNode(Opcodes.ALOAD, 0));
+				list.add(new MethodInsnNode(Opcodes.INVOKESTATIC, TRACKER, "endChunk", "(Ljava/lang/Object;)V", false));
+				methodNode.instructions.insertBefore(node, list);
+			}
+		}
+
+		// try { beginChunk(); <body> } catch (Throwable t) { endChunk(this); throw t; }
+		LabelNode start = new LabelNode();
+		LabelNode end = new LabelNode();
+		LabelNode handler = new LabelNode();
+		InsnList head = new InsnList();
+		head.add(start);
+		head.add(new MethodInsnNode(Opcodes.INVOKESTATIC, TRACKER, "beginChunk", "()V", false));
+		methodNode.instructions.insertBefore(methodNode.instructions.getFirst(), head);
+
+		InsnList tail = new InsnList();
+		tail.add(end);
+		tail.add(handler);
+		tail.add(new FrameNode(Opcodes.F_FULL, 1, new Object[] { classNode.name }, 1, new Object[] { "java/lang/Throwable" }));
+		tail.add(new VarInsnNode(Opcodes.ALOAD, 0));
+		tail.add(new MethodInsnNode(Opcodes.INVOKESTATIC, TRACKER, "endChunk", "(Ljava/lang/Object;)V", false));
+		tail.add(new InsnNode(Opcodes.ATHROW));
+		methodNode.instructions.add(tail);
+		// last, so that the method's own handlers are tried first
+		methodNode.tryCatchBlocks.add(new TryCatchBlockNode(start, end, handler, null));
+	}
+
+	@Override
+	public ClassNode apply(ClassNode classNode) {
+		boolean blockModelRenderer = BLOCK_MODEL_RENDERER.equals(classNode.name);
+		for (MethodNode methodNode : classNode.methods) {
+			if ((methodNode.access & Opcodes.ACC_STATIC) != 0) {
+				continue;
+			}
+
+			if (REBUILD_CHUNK.contains(methodNode.name)) {
+				patchRebuildChunk(classNode, methodNode);
+				System.out.println("Added animation visibility tracking to " + classNode.name + "." + methodNode.name);
+			} else if (blockModelRenderer && RENDER_MODEL_DESC.equals(methodNode.desc)) {
+				InsnList list = new InsnList();
+				list.add(new VarInsnNode(Opcodes.ALOAD, 2));
+				list.add(new MethodInsnNode(Opcodes.INVOKESTATIC, TRACKER, "getModelForRender",
+						"(Lnet/minecraft/client/renderer/block/model/IBakedModel;)Lnet/minecraft/client/renderer/block/model/IBakedModel;", false));
+				list.add(new VarInsnNode(Opcodes.ASTORE, 2));
+				methodNode.instructions.insertBefore(methodNode.instructions.getFirst(), list);
+				System.out.println("Added animation visibility tracking to " + classNode.name + "." + methodNode.name);
+			} else if (blockModelRenderer && RENDER_BRIGHTNESS_QUADS_DESC.equals(methodNode.desc)) {
+				methodNode.instructions.insertBefore(methodNode.instructions.getFirst(), createMarkQuads(5));
+				System.out.println("Added animation visibility tracking to " + classNode.name + "." + methodNode.name);
+			} else if (RENDER_QUADS.contains(methodNode.name) && RENDER_QUADS_DESC.equals(methodNode.desc)) {
+				methodNode.instructions.insertBefore(methodNode.instructions.getFirst(), createMarkQuads(2));
+				System.out.println("Added animation visibility tracking to " + classNode.name + "." + methodNode.name);
+			}
+		}
+		return classNode;
+	}
+}
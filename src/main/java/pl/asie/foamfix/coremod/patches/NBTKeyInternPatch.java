@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.coremod.patches;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+import pl.asie.patchy.TransformerFunction;
+
+import java.util.ListIterator;
+
+/**
+ * Passes every key NBTTagCompound reads through NBTKeyInterner - in vanilla,
+ * DataInput.readUTF() is only ever used there to read compound keys.
+ */
+public class NBTKeyInternPatch implements TransformerFunction<ClassNode> {
+	@Override
+	public ClassNode apply(ClassNode classNode) {
+		for (MethodNode method : classNode.methods) {
+			ListIterator<AbstractInsnNode> it = method.instructions.iterator();
+			while (it.hasNext()) {
+				AbstractInsnNode node = it.next();
+				if (node instanceof MethodInsnNode && node.getOpcode() == Opcodes.INVOKEINTERFACE
+						&& "java/io/DataInput".equals(((MethodInsnNode) node).owner)
+						&& "readUTF".equals(((MethodInsnNode) node).name)) {
+					it.add(new MethodInsnNode(
+							Opcodes.INVOKESTATIC,
+							"pl/asie/foamfix/common/nbt/NBTKeyInterner",
+							"intern",
+							"(Ljava/lang/String;)Ljava/lang/String;",
+							false
+					));
+					System.out.println("Interning DataInput.readUTF() in " + classNode.name + " " + method.name);
+				}
+			}
+		}
+		return classNode;
+	}
+}
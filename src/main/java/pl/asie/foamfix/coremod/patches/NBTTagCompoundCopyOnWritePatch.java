@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.coremod.patches;
+
+import net.minecraft.nbt.NBTBase;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+import pl.asie.foamfix.common.nbt.FoamNBTTagCompoundMap;
+import pl.asie.patchy.TransformerFunction;
+
+import java.util.ListIterator;
+import java.util.Map;
+
+/**
+ * Lets copy-on-write compounds tell apart the tags handed in and out by
+ * NBTTagCompound.read/write, which nothing else gets to hold a reference to,
+ * from the ones handed in and out through the rest of the API.
+ */
+public class NBTTagCompoundCopyOnWritePatch implements TransformerFunction<ClassNode> {
+	public static Object putOwned(Map<String, NBTBase> map, Object key, Object value) {
+		if (map instanceof FoamNBTTagCompoundMap) {
+			return ((FoamNBTTagCompoundMap) map).putOwned((String) key, (NBTBase) value);
+		} else {
+			return map.put((String) key, (NBTBase) value);
+		}
+	}
+
+	public static Object peek(Map<String, NBTBase> map, Object key) {
+		if (map instanceof FoamNBTTagCompoundMap) {
+			return ((FoamNBTTagCompoundMap) map).peek(key);
+		} else {
+			return map.get(key);
+		}
+	}
+
+	private static boolean isMethod(MethodNode method, String name, String srgName, String desc) {
+		return (name.equals(method.name) || srgName.equals(method.name)) && desc.equals(method.desc);
+	}
+
+	private void redirect(ClassNode classNode, MethodNode method, String name, String newName, String newDesc) {
+		ListIterator<AbstractInsnNode> it = method.instructions.iterator();
+		while (it.hasNext()) {
+			AbstractInsnNode node = it.next();
+			if (node instanceof MethodInsnNode && node.getOpcode() == Opcodes.INVOKEINTERFACE
+					&& "java/util/Map".equals(((MethodInsnNode) node).owner)
+					&& name.equals(((MethodInsnNode) node).name)) {
+				it.set(new MethodInsnNode(
+						Opcodes.INVOKESTATIC,
+						"pl/asie/foamfix/coremod/patches/NBTTagCompoundCopyOnWritePatch",
+						newName,
+						newDesc,
+						false
+				));
+				System.out.println("Replaced Map." + name + "() in " + classNode.name + " " + method.name);
+			}
+		}
+	}
+
+	@Override
+	public ClassNode apply(ClassNode classNode) {
+		for (MethodNode method : classNode.methods) {
+			if (isMethod(method, "read", "func_152446_a", "(Ljava/io/DataInput;ILnet/minecraft/nbt/NBTSizeTracker;)V")) {
+				redirect(classNode, method, "put", "putOwned", "(Ljava/util/Map;Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+			} else if (isMethod(method, "write", "func_74734_a", "(Ljava/io/DataOutput;)V")) {
+				redirect(classNode, method, "get", "peek", "(Ljava/util/Map;Ljava/lang/Object;)Ljava/lang/Object;");
+			}
+		}
+		return classNode;
+	}
+}
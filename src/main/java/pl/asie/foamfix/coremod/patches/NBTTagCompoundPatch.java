@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.coremod.patches;
+
+import net.minecraft.nbt.NBTBase;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+import pl.asie.foamfix.common.nbt.FoamNBTTagCompoundMap;
+import pl.asie.patchy.TransformerFunction;
+
+import java.util.ListIterator;
+import java.util.Map;
+
+public class NBTTagCompoundPatch implements TransformerFunction<ClassNode> {
+	public static Map<String, NBTBase> newTagMap() {
+		return new FoamNBTTagCompoundMap();
+	}
+
+	@Override
+	public ClassNode apply(ClassNode classNode) {
+		for (MethodNode method : classNode.methods) {
+			if (!"<init>".equals(method.name)) {
+				continue;
+			}
+
+			ListIterator<AbstractInsnNode> it = method.instructions.iterator();
+			while (it.hasNext()) {
+				AbstractInsnNode node = it.next();
+				if (node instanceof MethodInsnNode && node.getOpcode() == Opcodes.INVOKESTATIC
+						&& "com/google/common/collect/Maps".equals(((MethodInsnNode) node).owner)
+						&& "newHashMap".equals(((MethodInsnNode) node).name)
+						&& "()Ljava/util/HashMap;".equals(((MethodInsnNode) node).desc)) {
+					AbstractInsnNode node2 = node.getNext();
+					if (node2 instanceof FieldInsnNode && node2.getOpcode() == Opcodes.PUTFIELD
+							&& "net/minecraft/nbt/NBTTagCompound".equals(((FieldInsnNode) node2).owner)
+							&& ("tagMap".equals(((FieldInsnNode) node2).name)
+							|| "field_74784_a".equals(((FieldInsnNode) node2).name))) {
+						it.set(new MethodInsnNode(
+								Opcodes.INVOKESTATIC,
+								"pl/asie/foamfix/coremod/patches/NBTTagCompoundPatch",
+								"newTagMap",
+								"()Ljava/util/Map;",
+								false
+						));
+						System.out.println("Replaced Maps.newHashMap() in " + classNode.name + " " + method.name);
+					}
+				}
+			}
+		}
+		return classNode;
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.coremod.patches;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+import pl.asie.patchy.TransformerFunction;
+
+import java.util.ListIterator;
+
+/**
+ * Redirects the IModel.bake calls in ModelLoader.setupModelRegistry to ParallelModelBaker,
+ * and tells it when the method starts and finishes.
+ */
+public class ParallelModelBakePatch implements TransformerFunction<ClassNode> {
+	private static final String BAKER = "pl/asie/foamfix/client/ParallelModelBaker";
+	private static final String BAKE_DESC = "(Lnet/minecraftforge/common/model/IModelState;Lnet/minecraft/client/renderer/vertex/VertexFormat;Ljava/util/function/Function;)Lnet/minecraft/client/renderer/block/model/IBakedModel;";
+
+	@Override
+	public ClassNode apply(ClassNode classNode) {
+		for (MethodNode methodNode : classNode.methods) {
+			if (!"setupModelRegistry".equals(methodNode.name)) {
+				continue;
+			}
+
+			int redirected = 0;
+			ListIterator<AbstractInsnNode> it = methodNode.instructions.iterator();
+			while (it.hasNext()) {
+				AbstractInsnNode node = it.next();
+				if (node instanceof MethodInsnNode && node.getOpcode() == Opcodes.INVOKEINTERFACE
+						&& "net/minecraftforge/client/model/IModel".equals(((MethodInsnNode) node).owner)
+						&& "bake".equals(((MethodInsnNode) node).name)
+						&& BAKE_DESC.equals(((MethodInsnNode) node).desc)) {
+					it.set(new MethodInsnNode(Opcodes.INVOKESTATIC, BAKER, "bake",
+							"(Lnet/minecraftforge/client/model/IModel;" + BAKE_DESC.substring(1), false));
+					redirected++;
+				} else if (node.getOpcode() == Opcodes.ARETURN) {
+					methodNode.instructions.insertBefore(node, new MethodInsnNode(Opcodes.INVOKESTATIC, BAKER, "end", "()V", false));
+				}
+			}
+
+			InsnList list = new InsnList();
+			list.add(new VarInsnNode(Opcodes.ALOAD, 0));
+			list.add(new MethodInsnNode(Opcodes.INVOKESTATIC, BAKER, "begin", "(Lnet/minecraftforge/client/model/ModelLoader;)V", false));
+			methodNode.instructions.insertBefore(methodNode.instructions.getFirst(), list);
+			System.out.println("Added parallel model baking patch (" + redirected + " bake calls).");
+		}
+		return classNode;
+	}
+}
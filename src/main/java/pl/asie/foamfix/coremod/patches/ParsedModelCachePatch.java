@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.coremod.patches;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import pl.asie.patchy.TransformerFunction;
+
+/**
+ * Makes ModelBakery load model and blockstate files through ParsedModelCache.
+ * The methods are found by their descriptors, which are unique within ModelBakery.
+ */
+public class ParsedModelCachePatch implements TransformerFunction<ClassNode> {
+	private static final String CACHE = "pl/asie/foamfix/client/ParsedModelCache";
+	private static final String LOAD_MODEL_DESC = "(Lnet/minecraft/util/ResourceLocation;)Lnet/minecraft/client/renderer/block/model/ModelBlock;";
+	private static final String LOAD_DEFINITION_DESC = "(Lnet/minecraft/util/ResourceLocation;Lnet/minecraft/client/resources/IResource;)Lnet/minecraft/client/renderer/block/model/ModelBlockDefinition;";
+
+	// if (ParsedModelCache.<check>(...)) return ParsedModelCache.<load>(...); - the static methods take the same arguments
+	private static InsnList createRedirect(MethodNode methodNode, String checkName, String checkDesc, String loadName, int checkArgs) {
+		int args = Type.getArgumentTypes(methodNode.desc).length;
+		InsnList list = new InsnList();
+		LabelNode ln = new LabelNode();
+		for (int i = 1; i <= checkArgs; i++) {
+			list.add(new VarInsnNode(Opcodes.ALOAD, i));
+		}
+		list.add(new MethodInsnNode(Opcodes.INVOKESTATIC, CACHE, checkName, checkDesc, false));
+		list.add(new JumpInsnNode(Opcodes.IFEQ, ln));
+		for (int i = 1; i <= args; i++) {
+			list.add(new VarInsnNode(Opcodes.ALOAD, i));
+		}
+		list.add(new MethodInsnNode(Opcodes.INVOKESTATIC, CACHE, loadName, methodNode.desc, false));
+		list.add(new InsnNode(Opcodes.ARETURN));
+		list.add(ln);
+		list.add(new FrameNode(Opcodes.F_SAME, 0, null, 0, null));
+		return list;
+	}
+
+	@Override
+	public ClassNode apply(ClassNode classNode) {
+		for (MethodNode methodNode : classNode.methods) {
+			if ((methodNode.access & Opcodes.ACC_STATIC) != 0) {
+				continue;
+			}
+
+			InsnList list = null;
+			if (LOAD_MODEL_DESC.equals(methodNode.desc)) {
+				list = createRedirect(methodNode, "canLoadModel", "(Lnet/minecraft/util/ResourceLocation;)Z", "loadModel", 1);
+			} else if (LOAD_DEFINITION_DESC.equals(methodNode.desc)) {
+				list = createRedirect(methodNode, "canLoadModelBlockDefinition", "()Z", "loadModelBlockDefinition", 0);
+			}
+
+			if (list != null) {
+				methodNode.instructions.insertBefore(methodNode.instructions.getFirst(), list);
+				System.out.println("Added parsed model cache redirect in " + classNode.name + " " + methodNode.name);
+			}
+		}
+		return classNode;
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.coremod.patches;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import pl.asie.patchy.TransformerFunction;
+
+import java.util.ListIterator;
+
+/**
+ * Routes PropertyBool/PropertyEnum/PropertyInteger through PropertyInterner:
+ * - every constructor (including subclass super() calls) interns its allowedValues set,
+ * - every static factory returning the class itself interns the property instance.
+ */
+public class PropertyInternPatch implements TransformerFunction<ClassNode> {
+    private static final String INTERNER = "pl/asie/foamfix/common/PropertyInterner";
+    private static final String VALUES_DESC = "Lcom/google/common/collect/ImmutableSet;";
+
+    @Override
+    public ClassNode apply(ClassNode classNode) {
+        String selfDesc = Type.getObjectType(classNode.name).getDescriptor();
+        FieldNode valuesField = null;
+
+        for (FieldNode field : classNode.fields) {
+            if ((field.access & Opcodes.ACC_STATIC) == 0 && VALUES_DESC.equals(field.desc)) {
+                if (valuesField != null) {
+                    System.out.println("Found more than one ImmutableSet in " + classNode.name + ", not interning its values!");
+                    valuesField = null;
+                    break;
+                }
+                valuesField = field;
+            }
+        }
+
+        int patchedConstructors = 0, patchedFactories = 0;
+
+        for (MethodNode method : classNode.methods) {
+            boolean isConstructor = "<init>".equals(method.name) && valuesField != null;
+            boolean isFactory = (method.access & Opcodes.ACC_STATIC) != 0 && method.desc.endsWith(")" + selfDesc);
+            if (!isConstructor && !isFactory) {
+                continue;
+            }
+
+            ListIterator<AbstractInsnNode> it = method.instructions.iterator();
+            while (it.hasNext()) {
+                AbstractInsnNode node = it.next();
+                InsnList list = new InsnList();
+
+                if (isConstructor && node.getOpcode() == Opcodes.RETURN) {
+                    list.add(new VarInsnNode(Opcodes.ALOAD, 0));
+                    list.add(new VarInsnNode(Opcodes.ALOAD, 0));
+                    list.add(new FieldInsnNode(Opcodes.GETFIELD, classNode.name, valuesField.name, valuesField.desc));
+                    list.add(new MethodInsnNode(Opcodes.INVOKESTATIC, INTERNER, "internValues",
+                            "(" + VALUES_DESC + ")" + VALUES_DESC, false));
+                    list.add(new FieldInsnNode(Opcodes.PUTFIELD, classNode.name, valuesField.name, valuesField.desc));
+                    patchedConstructors++;
+                } else if (isFactory && node.getOpcode() == Opcodes.ARETURN) {
+                    list.add(new MethodInsnNode(Opcodes.INVOKESTATIC, INTERNER, "intern",
+                            "(Lnet/minecraft/block/properties/IProperty;)Lnet/minecraft/block/properties/IProperty;", false));
+                    list.add(new TypeInsnNode(Opcodes.CHECKCAST, classNode.name));
+                    patchedFactories++;
+                } else {
+                    continue;
+                }
+
+                method.instructions.insertBefore(node, list);
+            }
+        }
+
+        System.out.println("Added property interning to " + classNode.name + " (" + patchedConstructors + " constructor exits, " + patchedFactories + " factory exits).");
+        return classNode;
+    }
+}
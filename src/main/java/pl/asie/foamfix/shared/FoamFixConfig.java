@@ -38,23 +38,23 @@ public class FoamFixConfig {
 	public boolean clCheapMinimumLighter, clInitOptions, clModelLoaderCleanup;
 	public boolean clDisableTextureAnimations;
 	public boolean geBlacklistLibraryTransformers;
-	public boolean geBlockPosPatch, geFasterEntityLookup, geFasterPropertyComparisons, geFasterAirLookup, geFasterEntityDataManager;
+	public boolean geBlockPosPatch, geFasterEntityLookup, geFasterPropertyComparisons, geInternBlockProperties, geFasterAirLookup, geFasterEntityDataManager, geSmallNBTCompounds, geCopyOnWriteNBTCompounds, geLazyNBTCompounds;
 	public boolean twDisableRedstoneLight;
-	public boolean geSmallPropertyStorage, gePatchChunkSerialization;
+	public boolean geSmallPropertyStorage, geLazyBlockStateTable, geCacheDerivedStateProperties, gePatchChunkSerialization;
 	public boolean twImmediateLightingUpdates;
 	public boolean gbPatchBeds, geFasterHopper, geFixWorldEntityCleanup, clDeduplicateModels, clDeduplicateIModels;
 	public boolean gbNotifyNonUnloadedWorlds, gbForgeGCNonUnloaded;
 	public int gbWorldUnloadTime;
-	public boolean dbgCountModels;
+	public boolean dbgCountModels, dbgShowCacheStats;
 	public boolean expUnpackBakedQuads;
 	public boolean txEnable, gbEnableWrapper, gbWrapperCountNotifyBlock;
 	public boolean clClearCachesOnUnload;
 	public boolean clModelResourceLocationFastConstruct;
 	public int txFasterAnimation;
-	public int txMaxAnimationMipLevel, txCacheAnimationMaxFrames;
-	public int geMobSpawnerCheckSpeed;
-	public int clDeduplicateStepEvery;
-	public boolean clSmallModelConditions;
+	public int txMaxAnimationMipLevel, txCacheAnimationMaxFrames, txCacheInterpolatedFramesSize, txInvisibleAnimationTimeout, txAnimationUploadBudget;
+	public int geMobSpawnerCheckSpeed, geNBTKeyCacheSize;
+	public int clDeduplicateStepEvery, clMultipartQuadCacheSize, clMultipartSelectorTableMaxStates, clItemQuadCacheSize, clWarmUpItemQuads;
+	public boolean clSmallModelConditions, clFastItemLayerQuads;
 	public boolean clOpenUrlLinux;
 	public boolean neMicroOptimizations;
 
@@ -64,6 +64,9 @@ public class FoamFixConfig {
 	public String[] gbCustomRules;
 
 	public boolean clJeiCreativeSearch;
+	public boolean clCacheParsedModels, txCompressAnimationFrames;
+	public int clParallelModelBaking;
+	public String[] clParallelModelBakingWhitelist, clParallelModelBakingBlacklist;
 
 	public int refreshTimes = 0;
 
@@ -146,6 +149,7 @@ public class FoamFixConfig {
 		boolean oldClJeiCreativeSearch = clJeiCreativeSearch;
 
 		dbgCountModels = getBoolean("countListBakedModels", "debug", false, "Should FoamFix count and list baked models during deduplication, per mod?", false, false);
+		dbgShowCacheStats = getBoolean("showCacheStatistics", "debug", false, "Should FoamFix show the statistics of its render caches on the F3 debug screen?", false, false);
 
 		lwWeakenResourceCache = getBoolean("weakenResourceCache", "launchwrapper", true, "Weaken LaunchWrapper's byte[] resource cache to make it cleanuppable by the GC. Safe.", true, true);
 		lwRemovePackageManifestMap = getBoolean("removePackageManifestMap", "launchwrapper", true, "Remove Launchwrapper package manifest map (which is not used anyway).", true, true);
@@ -159,6 +163,11 @@ public class FoamFixConfig {
 		gbWrapperCountNotifyBlock = getBoolean("wrapperShowsNeighborUpdates", "ghostbuster", false, "Should the /ghostbuster debugger show neighbor updates?", false, true);
 		clClearCachesOnUnload = getBoolean("clearCachesOnWorldUnload", "client", true, "Clears caches on world unload a bit faster than usual. Prevents temporary memory leaks. More effective in Anarchy.", true, true);
 		clDeduplicateStepEvery = getInt("deduplicateModelsStepEvery", "client", 1, 1, 10000, "Step every X models on the progress bar while deduplicating baked models.", false, false);
+		clMultipartQuadCacheSize = getInt("multipartQuadCacheSize", "client", 256, 0, 65536, "The amount of block state/side slots cached per deduplicated multipart model, saving the predicate checks and list building on chunk rebuilds. Rounded up to a power of two; 0 disables the cache.", false, true);
+		clMultipartSelectorTableMaxStates = getInt("multipartSelectorTableMaxStates", "client", 1024, 0, 65536, "Deduplicated multipart models for blocks with at most this many states precompute which of their parts match each state (8 bytes per state). 0 disables the tables.", false, true);
+		clItemQuadCacheSize = getInt("itemQuadCacheSize", "client", 16384, 0, 1048576, "The memory budget, in kilobytes, for the 3D quads of dynamically rendered item models. Least recently used items are evicted first; 0 disables the cache.", false, true);
+		clWarmUpItemQuads = getInt("warmUpItemQuads", "client", 0, 0, 65536, "The amount of dynamically rendered item models to build 3D quads for in the background after model baking - the ones used most in the previous session first, then creative tab contents. Avoids stutter on first render. 0 disables.", true, true);
+		clFastItemLayerQuads = getBoolean("fastItemLayerQuads", "client", true, "Use FoamFix's own generator for the 3D quads of dynamically rendered item models. Faster, and the quads take less memory.", false, true);
 
 		gbForgeGCNonUnloaded = getBoolean("nonUnloadedWorldsForceGCOnCheck", "ghostbuster", false, "For FoamFix debugging/development purposes only.", false, false);
 		gbNotifyNonUnloadedWorlds = getBoolean("checkNonUnloadedWorldClients", "ghostbuster", true, "Checks if worlds do not unload after a specified amount of time, and notifies the user if that is the case.", true, true);
@@ -172,6 +181,7 @@ public class FoamFixConfig {
 			int oldTxFasterAnimation = txFasterAnimation;
 			int oldTxCacheAnimationMaxFrames = txCacheAnimationMaxFrames;
 			int oldTxMaxAnimationMipLevel = txMaxAnimationMipLevel;
+			int oldTxCacheInterpolatedFramesSize = txCacheInterpolatedFramesSize;
 			boolean oldClWipeModelCache = clWipeModelCache;
 
 			geMobSpawnerCheckSpeed = getInt("mobSpawnerCheckSpeed", "coremod", 10, 1, 200, "The amount of ticks per player presence check for mob spawners. Set to 1 to disable the patch and match vanilla behaviour.", true, true);
@@ -186,14 +196,22 @@ public class FoamFixConfig {
 
 			clJeiCreativeSearch = getBoolean("jeiCreativeSearch", "client", true, "Makes vanilla creative tab search use JEI's lookups - saves a lot of RAM *and* gives you fancy JEI features!", true, true);
 			clWipeModelCache = getBoolean("wipeModelCache", "client", true, "Wipes the IModel cache after baking is finished. Saves a lot of RAM, as most IModels will not be reloaded.", false, true);
+			clCacheParsedModels = getBoolean("cacheParsedModels", "client", false, "Keeps parsed model and blockstate JSON files between resource reloads, so that unchanged files are not parsed again. Every reload still gets its own copy of each model. Costs some RAM between reloads.", true, true);
+			clParallelModelBaking = getInt("parallelModelBaking", "client", 0, 0, 64, "The amount of threads to bake models known to be thread-safe with - vanilla JSON models and item layer models, plus the whitelist below. 0 disables parallel baking.", true, true);
+			clParallelModelBakingWhitelist = getStringList("parallelModelBakingWhitelist", "client", "Additional IModel class names which are safe to bake in parallel. Entries ending with a dot match whole packages.", true, false);
+			clParallelModelBakingBlacklist = getStringList("parallelModelBakingBlacklist", "client", "IModel class names which must never be baked in parallel, even if otherwise considered safe. Entries ending with a dot match whole packages.", true, false);
 
 			txEnable = getBoolean("enable", "textures", true, "If false, disables any patches from this category.", true, true);
 			txFasterAnimation = getInt("fasterAnimation", "textures", 1, 0, 2,"Controls the faster animation path. 0 - disable, 2 - force enable, 1 (default) - enable on devices which have been shown to benefit from it.", false, true);
 			txCacheAnimationMaxFrames = getInt("maxAnimationFramesForCache", "textures", 256, 0, Integer.MAX_VALUE, "The maximum amount of frames an animation can have for it to be cached. If you have a lot of VRAM, set higher.", false, true);
 			txMaxAnimationMipLevel = getInt("maxAnimationMipLevel", "textures", -1, -1, 4, "Set to a number to disable animation updates past that mip level. -1 means update all. Higher numbers update more levels. To disable animation updates altogether, use the option for it.", false, true);
+			txCacheInterpolatedFramesSize = getInt("maxInterpolatedFramesCacheSize", "textures", 512, 0, 65536, "The maximum size, in kilobytes of VRAM, of the precomputed in-between frames of a single cached interpolated animation. Animations which fit are played back by copying instead of blending frames every tick. 0 disables.", false, true);
+			txInvisibleAnimationTimeout = getInt("invisibleAnimationTimeout", "textures", 0, 0, 1200, "If above 0, animated block textures which have not been on screen for this many ticks stop being updated, catching up to the right frame once visible again. Textures not used by chunk-rendered blocks are always updated. 0 disables.", true, true);
+			txAnimationUploadBudget = getInt("animationUploadBudget", "textures", 0, 0, 65536, "The amount of animation frame data, in kilobytes, uploaded from the CPU per tick. Frame changes over the budget are spread out over the next ticks, for up to half of the frame's time. Animations cached on the GPU are not affected. 0 disables the limit.", false, true);
+			txCompressAnimationFrames = getBoolean("compressAnimationFrames", "textures", false, "Keep the frames of animated textures palette-compressed in RAM, decoding them as they are needed. Saves a lot of RAM with long animations, at a small cost on every frame change.", false, true);
 
 			if (refreshTimes > 1) {
-				if (oldClWipeModelCache != clWipeModelCache || oldTxFasterAnimation != txFasterAnimation || oldTxCacheAnimationMaxFrames != txCacheAnimationMaxFrames || oldTxMaxAnimationMipLevel != txMaxAnimationMipLevel) {
+				if (oldClWipeModelCache != clWipeModelCache || oldTxFasterAnimation != txFasterAnimation || oldTxCacheAnimationMaxFrames != txCacheAnimationMaxFrames || oldTxMaxAnimationMipLevel != txMaxAnimationMipLevel || oldTxCacheInterpolatedFramesSize != txCacheInterpolatedFramesSize) {
 					resourceDirty = true;
 				}
 
@@ -210,6 +228,8 @@ public class FoamFixConfig {
 			twImmediateLightingUpdates = getBoolean("immediateLightingUpdates", "tweaks", false, "Do not delay lighting updates over other types of updates.", true, true);
 			geBlacklistLibraryTransformers = getBoolean("blacklistLibraryTransformers", "coremod", true, "Stops certain non-Minecraft-related libraries from being ASM transformed. You shouldn't be transforming those anyway.", true, true);
 			geSmallPropertyStorage = getBoolean("smallPropertyStorage", "coremod", true, "Replaces the default BlockState/ExtendedBlockState implementations with a far more memory-efficient variant.", true, true);
+			geLazyBlockStateTable = getBoolean("lazyBlockStateTable", "experimental", false, "Makes smallPropertyStorage-created BlockStates decode their property values from a packed table, only building the property map when a mod asks for it. Saves RAM in packs with many decorative blocks.", true, true);
+			geCacheDerivedStateProperties = getBoolean("cacheDerivedStateProperties", "coremod", true, "Caches opacity, full cube and light values per BlockState for blocks which declare them as pure through the FoamFix API. Requires smallPropertyStorage.", true, true);
 			geBlockPosPatch = getBoolean("optimizedBlockPos", "coremod", true, "Optimizes BlockPos mutable/immutable getters to run on the same variables, letting them be inlined and thus theoretically increasing performance.", true, true);
 			clDynamicItemModels = getBoolean("dynamicItemModels", "coremod", true, "Make 3D forms of items be rendered dynamically and cached when necessary.", true, true);
 			// geSmallLightingOptimize = getBoolean("smallLightingOptimize", "experimental", true, "Not fully benchmarked, experimental minor lighting calculation code optimization - according to preliminary tests, it doesn't impact performance while reducing GC churn.");
@@ -218,7 +238,12 @@ public class FoamFixConfig {
 				geFasterEntityLookup = getBoolean("fasterEntityLookup", "coremod", true, "Speeds up entity lookup by optimizing ClassInheritanceMultiMap.getByClass.", true, true);
 			geFasterAirLookup = getBoolean("fasterAirItemLookup", "coremod", true, "Optimizes ItemStack.isEmpty by removing a map lookup. Initially found by Aikar (Paper/0181).", true, true);
 			geFasterPropertyComparisons = getBoolean("fasterPropertyComparisons", "coremod", true, "Optimizes blockstate property equals and hashCode methods.", true, true);
+			geInternBlockProperties = getBoolean("internBlockProperties", "coremod", true, "Makes identical vanilla-type blockstate properties (and their value sets) share one instance as they are created. Saves RAM and makes property comparisons mostly identity checks.", true, true);
 			geFasterEntityDataManager = getBoolean("fasterEntityDataManager", "experimental", false, "Optimizes the backing map for EntityDataManager, saving memory *and* CPU time! May cause issues, however - please test and report back!", true, true);
+			geSmallNBTCompounds = getBoolean("smallNBTCompounds", "experimental", false, "Replaces the HashMap backing NBTTagCompounds with a compact open addressing table. Saves RAM on items, entities and tile entities with small compounds. May cause issues with mods which rely on the compound being a HashMap - please test and report back!", true, true);
+			geCopyOnWriteNBTCompounds = getBoolean("copyOnWriteNBTCompounds", "experimental", false, "Makes NBTTagCompound.copy() share the copied compound's contents until either compound is changed. Speeds up copying ItemStacks with large tags read from disk or the network; tags which have been handed out, such as an item's display name, are still copied right away. Requires smallNBTCompounds.", true, true);
+			geLazyNBTCompounds = getBoolean("lazyNBTCompounds", "experimental", false, "Keeps larger NBT compounds nested deep in data read from disk, such as the contents of shulker boxes lying in chests, as raw bytes until they are first accessed, and writes them back unchanged if they never are. Reduces allocation while loading and saving chunks with such items. Requires smallNBTCompounds.", true, true);
+			geNBTKeyCacheSize = getInt("nbtKeyCacheSize", "coremod", 4096, 0, 1048576, "The size of the table used to make NBT compound keys read from disk or the network share one String instance. Set to 0 to disable.", true, true);
 			geFasterHopper = getBoolean("fasterHopper", "coremod", true, "Speeds up the hopper's calculations.", true, true);
 			geFixWorldEntityCleanup = getBoolean("fixWorldEntityCleanup", "coremod", true, "Fixes the server not removing unloaded entities/tile entities if no chunkloaders are active. Thanks to CreativeMD for finding this!", true, true);
 
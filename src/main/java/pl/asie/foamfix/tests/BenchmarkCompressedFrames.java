@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import pl.asie.foamfix.client.CompressedFrameList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+@State(Scope.Thread)
+public class BenchmarkCompressedFrames {
+    private static final int FRAMES = 32;
+    private static final int MIP_LEVELS = 4;
+
+    @Param({ "16", "64", "256" })
+    public int size;
+
+    // water - a shifting pattern of a few dozen shades; noise - too many colors for a palette
+    @Param({ "water", "noise" })
+    public String pattern;
+
+    private List<int[][]> raw;
+    private CompressedFrameList compressed;
+    private int tick;
+
+    private int[][] createFrame(int frame, Random random) {
+        int[][] mips = new int[MIP_LEVELS + 1][];
+        for (int mip = 0; mip <= MIP_LEVELS; mip++) {
+            int s = size >> mip;
+            mips[mip] = new int[s * s];
+            for (int i = 0; i < mips[mip].length; i++) {
+                if ("water".equals(pattern)) {
+                    int shade = ((i % s) + (i / s) * 3 + frame * 2) % 48;
+                    mips[mip][i] = 0xC0000000 | (0x20 + shade) << 16 | (0x40 + shade * 2) << 8 | 0xFF;
+                } else {
+                    mips[mip][i] = random.nextInt();
+                }
+            }
+        }
+        return mips;
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(size);
+        raw = new ArrayList<>();
+        for (int i = 0; i < FRAMES; i++) {
+            raw.add(createFrame(i, random));
+        }
+
+        CompressedFrameList.resetStatistics();
+        compressed = new CompressedFrameList(raw);
+        for (int i = 0; i < FRAMES; i++) {
+            for (int mip = 0; mip <= MIP_LEVELS; mip++) {
+                if (!Arrays.equals(raw.get(i)[mip], compressed.get(i)[mip])) {
+                    throw new IllegalStateException("Frame " + i + " mip " + mip + " does not match!");
+                }
+            }
+        }
+        System.out.println(size + "x " + pattern + ": " + String.join(", ", CompressedFrameList.getStatistics()));
+    }
+
+    @Benchmark
+    public int[][] frameChangeRaw() {
+        tick = (tick + 1) % FRAMES;
+        return raw.get(tick);
+    }
+
+    // every tick is a frame change - the worst case, as the decoded frame cache never hits
+    @Benchmark
+    public int[][] frameChangeCompressed() {
+        tick = (tick + 1) % FRAMES;
+        return compressed.get(tick);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkCompressedFrames.class.getSimpleName())
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import net.minecraft.block.Block;
+import net.minecraft.block.material.Material;
+import net.minecraft.block.properties.PropertyHelper;
+import net.minecraft.block.state.BlockStateContainer;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Bootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import pl.asie.foamfix.common.FoamyBlockStateContainer;
+
+import java.util.Collection;
+import java.util.List;
+
+@State(Scope.Thread)
+public class BenchmarkCustomProperty {
+    // mimics the mod-defined value types seen in the wild: not an enum, hashCode() not cached
+    public static final class Frame implements Comparable<Frame> {
+        private final String name;
+
+        public Frame(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public int compareTo(Frame o) {
+            return name.compareTo(o.name);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Frame && ((Frame) o).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = 0;
+            for (int i = 0; i < name.length(); i++) {
+                h = 31 * h + name.charAt(i);
+            }
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public static final class PropertyFrame extends PropertyHelper<Frame> {
+        private final List<Frame> values;
+
+        public PropertyFrame(String name, List<Frame> values) {
+            super(name, Frame.class);
+            this.values = values;
+        }
+
+        @Override
+        public Collection<Frame> getAllowedValues() {
+            return values;
+        }
+
+        @Override
+        public Optional<Frame> parseValue(String value) {
+            for (Frame f : values) {
+                if (f.name.equals(value)) {
+                    return Optional.of(f);
+                }
+            }
+            return Optional.absent();
+        }
+
+        @Override
+        public String getName(Frame value) {
+            return value.name;
+        }
+    }
+
+    private static final Frame[] FRAMES;
+    private static final PropertyFrame FRAME;
+    private static final IBlockState stateVanilla, stateFoamy;
+
+    static {
+        Bootstrap.register();
+        FRAMES = new Frame[12];
+        for (int i = 0; i < FRAMES.length; i++) {
+            FRAMES[i] = new Frame("frame_of_reinforced_material_" + i);
+        }
+        FRAME = new PropertyFrame("frame", ImmutableList.copyOf(FRAMES));
+
+        stateVanilla = new Block(Material.ROCK) {
+            @Override
+            protected BlockStateContainer createBlockState() {
+                return new BlockStateContainer(this, FRAME);
+            }
+        }.getDefaultState();
+
+        stateFoamy = new Block(Material.ROCK) {
+            @Override
+            protected BlockStateContainer createBlockState() {
+                return new FoamyBlockStateContainer(this, FRAME);
+            }
+        }.getDefaultState();
+    }
+
+    private static IBlockState cycle(IBlockState state) {
+        for (Frame f : FRAMES) {
+            state = state.withProperty(FRAME, f);
+        }
+        return state;
+    }
+
+    @Benchmark
+    public IBlockState withPropertyVanilla() {
+        return cycle(stateVanilla);
+    }
+
+    @Benchmark
+    public IBlockState withPropertyFoamy() {
+        return cycle(stateFoamy);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkCustomProperty.class.getSimpleName())
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.material.Material;
+import net.minecraft.block.properties.PropertyBool;
+import net.minecraft.block.properties.PropertyEnum;
+import net.minecraft.block.state.BlockStateContainer;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.item.EnumDyeColor;
+import net.minecraft.util.math.BlockPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import pl.asie.foamfix.api.IFoamFixPureBlock;
+import pl.asie.foamfix.common.FoamyBlockState;
+import pl.asie.foamfix.common.FoamyBlockStateContainer;
+import pl.asie.foamfix.shared.FoamFixShared;
+
+@State(Scope.Thread)
+public class BenchmarkDerivedStateProperties {
+    private static final PropertyEnum<EnumDyeColor> COLOR = PropertyEnum.create("color", EnumDyeColor.class);
+    private static final PropertyBool LIT = PropertyBool.create("lit");
+    private static final IBlockState[] statesModBlock, statesPureModBlock;
+
+    // mimics a typical mod lamp/glass block: everything is derived from the state via getValue()
+    public static class ModBlock extends Block {
+        public ModBlock() {
+            super(Material.GLASS);
+        }
+
+        @Override
+        protected BlockStateContainer createBlockState() {
+            return new FoamyBlockStateContainer(this, COLOR, LIT);
+        }
+
+        @Override
+        public boolean isOpaqueCube(IBlockState state) {
+            return state.getValue(COLOR) != EnumDyeColor.WHITE;
+        }
+
+        @Override
+        public boolean isFullCube(IBlockState state) {
+            return state.getValue(COLOR) != EnumDyeColor.WHITE;
+        }
+
+        @Override
+        public int getLightOpacity(IBlockState state) {
+            return state.getValue(COLOR) != EnumDyeColor.WHITE ? 255 : 0;
+        }
+
+        @Override
+        public int getLightValue(IBlockState state) {
+            return state.getValue(LIT) ? 15 : 0;
+        }
+    }
+
+    public static class PureModBlock extends ModBlock implements IFoamFixPureBlock {
+
+    }
+
+    // a block relying on Block's fields, which are only set up after Block.<init> has queried its default state
+    public static class PureLampBlock extends Block implements IFoamFixPureBlock {
+        public PureLampBlock() {
+            super(Material.GLASS);
+            setLightOpacity(3);
+            setLightLevel(1.0f);
+        }
+
+        @Override
+        protected BlockStateContainer createBlockState() {
+            return new FoamyBlockStateContainer(this, LIT);
+        }
+    }
+
+    private static final Block lampBlock;
+
+    static {
+        Bootstrap.register();
+        FoamFixShared.config.geCacheDerivedStateProperties = true;
+        statesModBlock = new ModBlock().getBlockState().getValidStates().toArray(new IBlockState[0]);
+        statesPureModBlock = new PureModBlock().getBlockState().getValidStates().toArray(new IBlockState[0]);
+        lampBlock = new PureLampBlock();
+        // what FoamFix does on FMLLoadCompleteEvent
+        FoamyBlockState.enableDerivedPropertyCache();
+    }
+
+    @Setup
+    public void setup() {
+        IBlockState state = lampBlock.getDefaultState();
+        if (!(state instanceof FoamyBlockState)) {
+            throw new IllegalStateException("Not a FoamyBlockState: " + state.getClass());
+        }
+        if (state.getLightOpacity() != 3 || state.getLightValue() != 15 || state.isTranslucent() != lampBlock.isTranslucent(state)) {
+            throw new IllegalStateException("Derived properties cached before the block was set up!");
+        }
+    }
+
+    // roughly what the lighting engine asks of every block it touches
+    private static int lightingPass(IBlockState[] states) {
+        int sum = 0;
+        for (IBlockState state : states) {
+            sum += state.getLightOpacity(null, BlockPos.ORIGIN) + state.getLightValue(null, BlockPos.ORIGIN);
+            if (state.isOpaqueCube() && state.isFullCube()) {
+                sum++;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int lightingUncached() {
+        return lightingPass(statesModBlock);
+    }
+
+    @Benchmark
+    public int lightingCached() {
+        return lightingPass(statesPureModBlock);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkDerivedStateProperties.class.getSimpleName())
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import net.minecraft.client.renderer.block.model.ModelRotation;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.init.Bootstrap;
+import net.minecraftforge.client.model.ItemLayerModel;
+import net.minecraftforge.common.model.TRSRTransformation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import pl.asie.foamfix.client.ItemLayerQuadBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+@State(Scope.Thread)
+public class BenchmarkItemLayerQuads {
+    @Param({ "sword16", "ring32", "noise64", "glass32" })
+    public String spriteName;
+
+    private TextureAtlasSprite sprite;
+
+    static {
+        Bootstrap.register();
+    }
+
+    private static TextureAtlasSprite createSprite(String name, int size, PixelFunction function) {
+        TextureAtlasSprite sprite = new TextureAtlasSprite(name) { };
+        int[] pixels = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                pixels[y * size + x] = function.get(x, y, size);
+            }
+        }
+
+        sprite.setIconWidth(size);
+        sprite.setIconHeight(size);
+        sprite.initSprite(size, size, 0, 0, false);
+        sprite.setFramesTextureData(ImmutableList.of(new int[][] { pixels }));
+        return sprite;
+    }
+
+    private interface PixelFunction {
+        int get(int x, int y, int size);
+    }
+
+    private static TextureAtlasSprite createSprite(String name) {
+        switch (name) {
+            case "sword16":
+                // a diagonal blade, two pixels thick
+                return createSprite(name, 16, (x, y, size) -> Math.abs(x - (size - 1 - y)) <= 1 ? 0xFF808080 : 0);
+            case "ring32":
+                return createSprite(name, 32, (x, y, size) -> {
+                    double d = Math.hypot(x - size / 2.0, y - size / 2.0);
+                    return d > size / 4.0 && d < size / 2.0 ? 0xFFC0A000 : 0;
+                });
+            case "noise64": {
+                Random random = new Random(64);
+                return createSprite(name, 64, (x, y, size) -> random.nextInt(3) != 0 ? 0xFF204080 : 0);
+            }
+            case "glass32":
+                // translucent - no run merging across gaps
+                return createSprite(name, 32, (x, y, size) -> ((x / 4 + y / 4) & 1) == 0 ? 0x80FFFFFF : 0);
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    private static List<String> getVertexData(List<BakedQuad> quads) {
+        List<String> list = new ArrayList<>();
+        for (BakedQuad quad : quads) {
+            list.add(quad.getFace() + " " + Arrays.toString(quad.getVertexData()));
+        }
+        list.sort(null);
+        return list;
+    }
+
+    private void checkSame(Optional<TRSRTransformation> transform) {
+        List<String> expected = getVertexData(ItemLayerModel.getQuadsForSprite(0, sprite, DefaultVertexFormats.ITEM, transform));
+        List<String> actual = getVertexData(ItemLayerQuadBuilder.getQuadsForSprite(0, sprite, DefaultVertexFormats.ITEM, transform));
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException(spriteName + ": vertex data differs from Forge's (" + transform + ")");
+        }
+    }
+
+    @Setup
+    public void setup() {
+        sprite = createSprite(spriteName);
+        checkSame(Optional.empty());
+        checkSame(Optional.of(new TRSRTransformation(ModelRotation.X90_Y180)));
+        System.out.println(spriteName + ": Forge " + forge().size() + " quads, FoamFix " + foamfix().size() + " quads");
+    }
+
+    @Benchmark
+    public List<BakedQuad> forge() {
+        return ItemLayerModel.getQuadsForSprite(0, sprite, DefaultVertexFormats.ITEM, Optional.empty());
+    }
+
+    @Benchmark
+    public List<BakedQuad> foamfix() {
+        return ItemLayerQuadBuilder.getQuadsForSprite(0, sprite, DefaultVertexFormats.ITEM, Optional.empty());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkItemLayerQuads.class.getSimpleName())
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
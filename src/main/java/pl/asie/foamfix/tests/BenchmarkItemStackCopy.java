@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import net.minecraft.init.Bootstrap;
+import net.minecraft.item.ItemStack;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Copies an NBT-heavy ItemStack as loaded from disk, with vanilla's
+ * NBTTagCompound or with the one patched by copyOnWriteNBTCompounds. Every
+ * fork loads only one of the two, so no Bootstrap in a static block here.
+ */
+@State(Scope.Thread)
+public class BenchmarkItemStackCopy {
+    @Param({ "vanilla", "copyOnWrite" })
+    public String impl;
+
+    private ItemStack stack, stackDisplayRead;
+
+    @Setup
+    public void setup() {
+        if ("copyOnWrite".equals(impl)) {
+            PatchedNBT.install(true, false);
+        }
+        Bootstrap.register();
+        if (PatchedNBT.isCopyOnWrite() != "copyOnWrite".equals(impl)) {
+            throw new IllegalStateException("Wrong NBTTagCompound loaded!");
+        }
+
+        stack = NBTFixtures.writeAndRead(NBTFixtures.createShulkerBox());
+        stackDisplayRead = NBTFixtures.writeAndRead(NBTFixtures.createShulkerBox());
+        // as tooltips and GUIs do - the "display" tag is handed out, and has to be copied eagerly from now on
+        stackDisplayRead.getDisplayName();
+
+        if (!ItemStack.areItemStacksEqual(stack, copy()) || !ItemStack.areItemStacksEqual(stack, copyAfterDisplayRead())
+                || !ItemStack.areItemStacksEqual(stack, copyAndRead())) {
+            throw new IllegalStateException("Copy mismatch!");
+        }
+    }
+
+    @Benchmark
+    public ItemStack copy() {
+        return stack.copy();
+    }
+
+    @Benchmark
+    public ItemStack copyAfterDisplayRead() {
+        return stackDisplayRead.copy();
+    }
+
+    @Benchmark
+    public ItemStack copyAndRead() {
+        // worst case - the copy's contents have to be copied after all
+        ItemStack copy = stack.copy();
+        copy.getSubCompound("BlockEntityTag");
+        return copy;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkItemStackCopy.class.getSimpleName())
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import net.minecraft.init.Bootstrap;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.*;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Loads the chunks of a synthetic region file the way AnvilChunkLoader does -
+ * CompressedStreamTools.read, then the Level compound, its sections and its
+ * tile entities - with vanilla's NBTTagCompound or the one patched by
+ * lazyNBTCompounds, and optionally saves them back. Every fork loads only one
+ * of the two, so no Bootstrap in a static block here.
+ */
+@State(Scope.Thread)
+public class BenchmarkLazyNBT {
+    private static final int CHUNKS = 32;
+
+    @Param({ "vanilla", "lazy" })
+    public String impl;
+
+    @Param({ "0", "16", "64" })
+    public int tileEntities;
+
+    private byte[][] region;
+    private final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream(1 << 20);
+
+    @Setup
+    public void setup() throws IOException {
+        if ("lazy".equals(impl)) {
+            PatchedNBT.install(false, true);
+        }
+        Bootstrap.register();
+        if (PatchedNBT.isLazy() != "lazy".equals(impl)) {
+            throw new IllegalStateException("Wrong NBTTagCompound loaded!");
+        }
+
+        Random random = new Random(tileEntities);
+        region = new byte[CHUNKS][];
+        for (int i = 0; i < CHUNKS; i++) {
+            NBTTagCompound chunk = NBTFixtures.createChunk(random, i & 7, i >> 3, tileEntities);
+            // as stored by RegionFile - zlib-compressed
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            try (DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(stream))) {
+                CompressedStreamTools.write(chunk, output);
+            }
+            region[i] = stream.toByteArray();
+
+            NBTTagCompound loaded = readChunk(i);
+            if (!chunk.equals(NBTFixtures.saveChunk(loaded, NBTFixtures.loadChunk(loaded)))) {
+                throw new IllegalStateException("Chunk " + i + " read differently!");
+            }
+        }
+    }
+
+    private NBTTagCompound readChunk(int i) throws IOException {
+        // as returned by RegionFile.getChunkDataInputStream
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(region[i]))))) {
+            return CompressedStreamTools.read(input);
+        }
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        int stacks = 0;
+        for (int i = 0; i < CHUNKS; i++) {
+            for (List<ItemStack> tile : NBTFixtures.loadChunk(readChunk(i))) {
+                stacks += tile.size();
+            }
+        }
+        return stacks;
+    }
+
+    @Benchmark
+    public byte[] loadAndSave() throws IOException {
+        outputBuffer.reset();
+        DataOutputStream output = new DataOutputStream(outputBuffer);
+        for (int i = 0; i < CHUNKS; i++) {
+            NBTTagCompound chunk = readChunk(i);
+            // the shulker boxes' contents are written back without ever being read
+            CompressedStreamTools.write(NBTFixtures.saveChunk(chunk, NBTFixtures.loadChunk(chunk)), output);
+        }
+        return outputBuffer.toByteArray();
+    }
+
+    @Benchmark
+    public int loadAndOpenShulkerBoxes() throws IOException {
+        // worst case - everything sliced ends up being read after all
+        int items = 0;
+        for (int i = 0; i < CHUNKS; i++) {
+            for (List<ItemStack> tile : NBTFixtures.loadChunk(readChunk(i))) {
+                for (ItemStack stack : tile) {
+                    NBTTagCompound blockEntityTag = stack.getSubCompound("BlockEntityTag");
+                    if (blockEntityTag != null) {
+                        items += blockEntityTag.getTagList("Items", 10).tagCount();
+                    }
+                }
+            }
+        }
+        return items;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkLazyNBT.class.getSimpleName())
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
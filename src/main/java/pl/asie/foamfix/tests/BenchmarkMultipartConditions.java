@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import net.minecraft.block.Block;
+import net.minecraft.block.material.Material;
+import net.minecraft.block.properties.PropertyBool;
+import net.minecraft.block.properties.PropertyDirection;
+import net.minecraft.block.properties.PropertyInteger;
+import net.minecraft.block.state.BlockStateContainer;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.renderer.block.model.multipart.ConditionAnd;
+import net.minecraft.client.renderer.block.model.multipart.ConditionOr;
+import net.minecraft.client.renderer.block.model.multipart.ConditionPropertyValue;
+import net.minecraft.client.renderer.block.model.multipart.ICondition;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.util.EnumFacing;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import pl.asie.foamfix.client.condition.FoamyConditionAnd;
+import pl.asie.foamfix.client.condition.FoamyConditionOr;
+import pl.asie.foamfix.client.condition.FoamyConditionPropertyValue;
+import pl.asie.foamfix.common.FoamyBlockStateContainer;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+@State(Scope.Thread)
+public class BenchmarkMultipartConditions {
+    private static final PropertyDirection FACING = PropertyDirection.create("facing", EnumFacing.Plane.HORIZONTAL);
+    private static final PropertyBool UP = PropertyBool.create("up");
+    private static final PropertyBool NORTH = PropertyBool.create("north");
+    private static final PropertyBool EAST = PropertyBool.create("east");
+    private static final PropertyBool SOUTH = PropertyBool.create("south");
+    private static final PropertyBool WEST = PropertyBool.create("west");
+    private static final PropertyInteger LEVEL = PropertyInteger.create("level", 0, 3);
+
+    // {key, value} pairs; rows with more than one pair are And-ed, rows prefixed with "|" are Or-ed
+    private static final String[][] SELECTORS = {
+            { "up", "true" },
+            { "north", "true" },
+            { "east", "true" },
+            { "south", "true" },
+            { "west", "true" },
+            { "north", "false", "east", "false" },
+            { "south", "false", "west", "false" },
+            { "facing", "north|south" },
+            { "facing", "east|west" },
+            { "facing", "!north" },
+            { "level", "0" },
+            { "level", "1|2" },
+            { "level", "!3" },
+            { "up", "false", "facing", "north" },
+            { "up", "false", "facing", "east", "level", "0" },
+            { "|", "north", "true", "south", "true" },
+            { "|", "east", "true", "west", "true" },
+            { "|", "level", "3", "up", "true" },
+            { "north", "true", "east", "true", "south", "true", "west", "true" },
+            { "facing", "west", "level", "1|2|3" }
+    };
+
+    private static final IBlockState[] states;
+    private static final Predicate<IBlockState>[] predicatesVanilla, predicatesFoamy;
+
+    public static class Block20 extends Block {
+        public Block20() {
+            super(Material.ROCK);
+        }
+
+        @Override
+        protected BlockStateContainer createBlockState() {
+            return new FoamyBlockStateContainer(this, FACING, UP, NORTH, EAST, SOUTH, WEST, LEVEL);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Predicate<IBlockState>[] createPredicates(BlockStateContainer container, BiFunction<String, String, ICondition> leaf,
+                                                             Function<Iterable<ICondition>, ICondition> and, Function<Iterable<ICondition>, ICondition> or) {
+        Predicate<IBlockState>[] predicates = new Predicate[SELECTORS.length];
+        for (int i = 0; i < SELECTORS.length; i++) {
+            String[] row = SELECTORS[i];
+            boolean isOr = "|".equals(row[0]);
+            ImmutableList.Builder<ICondition> conditions = ImmutableList.builder();
+            for (int j = isOr ? 1 : 0; j < row.length; j += 2) {
+                conditions.add(leaf.apply(row[j], row[j + 1]));
+            }
+
+            ImmutableList<ICondition> list = conditions.build();
+            ICondition condition = list.size() == 1 ? list.get(0) : (isOr ? or.apply(list) : and.apply(list));
+            predicates[i] = condition.getPredicate(container);
+        }
+        return predicates;
+    }
+
+    static {
+        Bootstrap.register();
+        BlockStateContainer container = new Block20().getBlockState();
+        states = container.getValidStates().toArray(new IBlockState[0]);
+        predicatesVanilla = createPredicates(container, ConditionPropertyValue::new, ConditionAnd::new, ConditionOr::new);
+        predicatesFoamy = createPredicates(container, FoamyConditionPropertyValue::new, FoamyConditionAnd::new, FoamyConditionOr::new);
+
+        for (IBlockState state : states) {
+            for (int i = 0; i < SELECTORS.length; i++) {
+                if (predicatesVanilla[i].apply(state) != predicatesFoamy[i].apply(state)) {
+                    throw new RuntimeException("Mismatch on selector " + i + " for " + state);
+                }
+            }
+        }
+    }
+
+    // what FoamyMultipartBakedModel does per getQuads() call without its cache
+    private static int evaluate(Predicate<IBlockState>[] predicates) {
+        int count = 0;
+        for (IBlockState state : states) {
+            for (Predicate<IBlockState> predicate : predicates) {
+                if (predicate.apply(state)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int conditionsVanilla() {
+        return evaluate(predicatesVanilla);
+    }
+
+    @Benchmark
+    public int conditionsCompiled() {
+        return evaluate(predicatesFoamy);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkMultipartConditions.class.getSimpleName())
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import net.minecraft.block.Block;
+import net.minecraft.block.material.Material;
+import net.minecraft.block.properties.PropertyBool;
+import net.minecraft.block.state.BlockStateContainer;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.renderer.block.model.*;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.util.EnumFacing;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import pl.asie.foamfix.client.FoamyMultipartBakedModel;
+import pl.asie.foamfix.common.FoamyBlockStateContainer;
+import pl.asie.foamfix.shared.FoamFixShared;
+
+import java.util.*;
+
+@State(Scope.Thread)
+public class BenchmarkMultipartQuads {
+    private static final PropertyBool UP = PropertyBool.create("up");
+    private static final PropertyBool NORTH = PropertyBool.create("north");
+    private static final PropertyBool EAST = PropertyBool.create("east");
+    private static final PropertyBool SOUTH = PropertyBool.create("south");
+    private static final PropertyBool WEST = PropertyBool.create("west");
+
+    private static final int AREA = 16 * 16 * 16;
+    private static final IBlockState[] area = new IBlockState[AREA];
+    private static final IBakedModel[] areaVanilla = new IBakedModel[AREA];
+    private static final IBakedModel[] areaUncached = new IBakedModel[AREA];
+    private static final IBakedModel[] areaTable = new IBakedModel[AREA];
+    private static final IBakedModel[] areaCached = new IBakedModel[AREA];
+
+    public static class FenceLike extends Block {
+        public FenceLike() {
+            super(Material.WOOD);
+        }
+
+        @Override
+        protected BlockStateContainer createBlockState() {
+            return new FoamyBlockStateContainer(this, NORTH, EAST, SOUTH, WEST);
+        }
+    }
+
+    public static class WallLike extends Block {
+        public WallLike() {
+            super(Material.ROCK);
+        }
+
+        @Override
+        protected BlockStateContainer createBlockState() {
+            return new FoamyBlockStateContainer(this, UP, NORTH, EAST, SOUTH, WEST);
+        }
+    }
+
+    private static IBakedModel createPart() {
+        Map<EnumFacing, List<BakedQuad>> faceQuads = new EnumMap<>(EnumFacing.class);
+        for (EnumFacing facing : EnumFacing.VALUES) {
+            faceQuads.put(facing, ImmutableList.of(new BakedQuad(new int[28], -1, facing, null, true, DefaultVertexFormats.BLOCK)));
+        }
+        return new SimpleBakedModel(ImmutableList.of(), faceQuads, true, false, null, ItemCameraTransforms.DEFAULT, ItemOverrideList.NONE);
+    }
+
+    private static IBakedModel createMultipart(boolean wall) {
+        MultipartBakedModel.Builder builder = new MultipartBakedModel.Builder();
+        builder.putModel(wall ? (Predicate<IBlockState>) state -> state.getValue(UP) : Predicates.alwaysTrue(), createPart());
+        builder.putModel(state -> state.getValue(NORTH), createPart());
+        builder.putModel(state -> state.getValue(EAST), createPart());
+        builder.putModel(state -> state.getValue(SOUTH), createPart());
+        builder.putModel(state -> state.getValue(WEST), createPart());
+        return builder.makeMultipartModel();
+    }
+
+    static {
+        Bootstrap.register();
+        Block fence = new FenceLike();
+        Block wall = new WallLike();
+        IBakedModel fenceVanilla = createMultipart(false);
+        IBakedModel wallVanilla = createMultipart(true);
+
+        FoamFixShared.config.clMultipartQuadCacheSize = 0;
+        FoamFixShared.config.clMultipartSelectorTableMaxStates = 0;
+        IBakedModel fenceUncached = new FoamyMultipartBakedModel((MultipartBakedModel) fenceVanilla);
+        IBakedModel wallUncached = new FoamyMultipartBakedModel((MultipartBakedModel) wallVanilla);
+
+        FoamFixShared.config.clMultipartSelectorTableMaxStates = 1024;
+        IBakedModel fenceTable = new FoamyMultipartBakedModel((MultipartBakedModel) fenceVanilla);
+        IBakedModel wallTable = new FoamyMultipartBakedModel((MultipartBakedModel) wallVanilla);
+
+        FoamFixShared.config.clMultipartQuadCacheSize = 256;
+        IBakedModel fenceCached = new FoamyMultipartBakedModel((MultipartBakedModel) fenceVanilla);
+        IBakedModel wallCached = new FoamyMultipartBakedModel((MultipartBakedModel) wallVanilla);
+
+        List<IBlockState> fenceStates = fence.getBlockState().getValidStates();
+        List<IBlockState> wallStates = wall.getBlockState().getValidStates();
+        Random random = new Random(1234);
+
+        for (int i = 0; i < AREA; i++) {
+            boolean isWall = random.nextBoolean();
+            List<IBlockState> states = isWall ? wallStates : fenceStates;
+            area[i] = states.get(random.nextInt(states.size()));
+            areaVanilla[i] = isWall ? wallVanilla : fenceVanilla;
+            areaUncached[i] = isWall ? wallUncached : fenceUncached;
+            areaTable[i] = isWall ? wallTable : fenceTable;
+            areaCached[i] = isWall ? wallCached : fenceCached;
+        }
+    }
+
+    // the getQuads() calls BlockModelRenderer makes for one chunk section
+    private static int rebuild(IBakedModel[] models) {
+        int count = 0;
+        for (int i = 0; i < AREA; i++) {
+            long rand = i * 31L;
+            for (EnumFacing facing : EnumFacing.VALUES) {
+                count += models[i].getQuads(area[i], facing, rand).size();
+            }
+            count += models[i].getQuads(area[i], null, rand).size();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int rebuildVanilla() {
+        return rebuild(areaVanilla);
+    }
+
+    @Benchmark
+    public int rebuildFoamyUncached() {
+        return rebuild(areaUncached);
+    }
+
+    @Benchmark
+    public int rebuildFoamySelectorTable() {
+        return rebuild(areaTable);
+    }
+
+    @Benchmark
+    public int rebuildFoamyCached() {
+        return rebuild(areaCached);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkMultipartQuads.class.getSimpleName())
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import net.minecraft.init.Bootstrap;
+import net.minecraft.item.ItemStack;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the tags of NBT-heavy ItemStacks as loaded from disk, through
+ * ItemStack.areItemStackTagsEqual - with vanilla's NBTTagCompound or with the
+ * one patched by smallNBTCompounds and copyOnWriteNBTCompounds. Every fork
+ * loads only one of the two, so no Bootstrap in a static block here.
+ */
+@State(Scope.Thread)
+public class BenchmarkNBTEquality {
+    @Param({ "vanilla", "foamy" })
+    public String impl;
+
+    private ItemStack stack, stackCopy, stackEqual, stackDifferent, stackShown, stackShownEqual;
+
+    private static ItemStack showTooltip(ItemStack stack) {
+        // hands out the "display" and "ench" tags, which then count as escaped
+        stack.getDisplayName();
+        stack.getEnchantmentTagList();
+        return stack;
+    }
+
+    @Setup
+    public void setup() {
+        if ("foamy".equals(impl)) {
+            PatchedNBT.install(true, false);
+        }
+        Bootstrap.register();
+        if (PatchedNBT.isCopyOnWrite() != "foamy".equals(impl)) {
+            throw new IllegalStateException("Wrong NBTTagCompound loaded!");
+        }
+
+        stack = NBTFixtures.writeAndRead(NBTFixtures.createPickaxe(3));
+        stackCopy = stack.copy();
+        stackEqual = NBTFixtures.writeAndRead(NBTFixtures.createPickaxe(3));
+        stackDifferent = NBTFixtures.writeAndRead(NBTFixtures.createPickaxe(5));
+        stackShown = showTooltip(NBTFixtures.writeAndRead(NBTFixtures.createPickaxe(3)));
+        stackShownEqual = showTooltip(NBTFixtures.writeAndRead(NBTFixtures.createPickaxe(3)));
+
+        if (!equalsCopy() || !equalsSame() || equalsDifferent() || !equalsShown()
+                || stack.getTagCompound().hashCode() != hashShown()) {
+            throw new IllegalStateException("Equality mismatch!");
+        }
+    }
+
+    @Benchmark
+    public boolean equalsCopy() {
+        return ItemStack.areItemStackTagsEqual(stack, stackCopy);
+    }
+
+    @Benchmark
+    public boolean equalsSame() {
+        return ItemStack.areItemStackTagsEqual(stack, stackEqual);
+    }
+
+    @Benchmark
+    public boolean equalsDifferent() {
+        return ItemStack.areItemStackTagsEqual(stack, stackDifferent);
+    }
+
+    @Benchmark
+    public boolean equalsShown() {
+        return ItemStack.areItemStackTagsEqual(stackShown, stackShownEqual);
+    }
+
+    @Benchmark
+    public int hashShown() {
+        return stackShown.getTagCompound().hashCode();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkNBTEquality.class.getSimpleName())
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
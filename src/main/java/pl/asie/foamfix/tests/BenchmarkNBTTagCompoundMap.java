@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagInt;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import pl.asie.foamfix.coremod.patches.NBTTagCompoundPatch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@State(Scope.Thread)
+public class BenchmarkNBTTagCompoundMap {
+    private static final String[] KEYS = {
+            "id", "Count", "Damage", "tag", "ForgeCaps", "Slot", "display", "Name",
+            "Lore", "ench", "lvl", "x", "y", "z", "Items", "CustomName"
+    };
+
+    @Param({ "1", "4", "8", "16" })
+    public int size;
+
+    @Param({ "vanilla", "foamy" })
+    public String impl;
+
+    private String[] keys;
+    private NBTBase[] values;
+    private Map<String, NBTBase> map;
+
+    private Map<String, NBTBase> createMap() {
+        return "foamy".equals(impl) ? NBTTagCompoundPatch.newTagMap() : new HashMap<>();
+    }
+
+    @Setup
+    public void setup() {
+        keys = new String[size];
+        values = new NBTBase[size];
+        map = createMap();
+        Map<String, NBTBase> expected = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            // new String instances, as if read from a stream
+            keys[i] = new String(KEYS[i]);
+            values[i] = new NBTTagInt(i);
+            map.put(keys[i], values[i]);
+            expected.put(keys[i], values[i]);
+        }
+
+        if (!map.equals(expected) || !expected.equals(map) || map.hashCode() != expected.hashCode() || !copy().equals(expected)) {
+            throw new IllegalStateException("Map mismatch: " + map + " != " + expected);
+        }
+    }
+
+    @Benchmark
+    public int get() {
+        int found = 0;
+        for (String key : keys) {
+            if (map.get(key) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public Map<String, NBTBase> put() {
+        Map<String, NBTBase> newMap = createMap();
+        for (int i = 0; i < keys.length; i++) {
+            newMap.put(keys[i], values[i]);
+        }
+        return newMap;
+    }
+
+    @Benchmark
+    public int iterate() {
+        int sum = 0;
+        for (Map.Entry<String, NBTBase> entry : map.entrySet()) {
+            sum += entry.getKey().length() + ((NBTTagInt) entry.getValue()).getInt();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Map<String, NBTBase> copy() {
+        // what NBTTagCompound.copy() does
+        Map<String, NBTBase> newMap = createMap();
+        for (String key : map.keySet()) {
+            newMap.put(key, map.get(key).copy());
+        }
+        return newMap;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkNBTTagCompoundMap.class.getSimpleName())
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
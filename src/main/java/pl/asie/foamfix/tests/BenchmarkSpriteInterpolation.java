@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import pl.asie.foamfix.client.FastTextureAtlasSprite;
+
+import java.util.Random;
+
+@State(Scope.Thread)
+public class BenchmarkSpriteInterpolation {
+    private static final int FRAME_TIME = 20;
+
+    @Param({ "16", "32", "64", "128", "256" })
+    public int size;
+
+    private int[] frame1, frame2, output;
+    private int tick;
+
+    // vanilla's TextureAtlasSprite.interpolateColor/updateAnimationInterpolated, for reference
+    private static int interpolateColorVanilla(double ratio, int from, int to) {
+        return (int) ((ratio * from) + ((1.0D - ratio) * to));
+    }
+
+    private static void interpolateFrameVanilla(int[] to, int[] from1, int[] from2, double ratio) {
+        for (int i = 0; i < from1.length; ++i) {
+            int color1 = from1[i];
+            int color2 = from2[i];
+            int colorRed = interpolateColorVanilla(ratio, color1 >> 16 & 0xFF, color2 >> 16 & 0xFF);
+            int colorGreen = interpolateColorVanilla(ratio, color1 >> 8 & 0xFF, color2 >> 8 & 0xFF);
+            int colorBlue = interpolateColorVanilla(ratio, color1 & 0xFF, color2 & 0xFF);
+            to[i] = color1 & 0xFF000000 | colorRed << 16 | colorGreen << 8 | colorBlue;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(size);
+        frame1 = new int[size * size];
+        frame2 = new int[size * size];
+        output = new int[size * size];
+        for (int i = 0; i < frame1.length; i++) {
+            frame1[i] = random.nextInt();
+            frame2[i] = random.nextInt();
+        }
+
+        // check that both agree within rounding for every step of a frame
+        int[] expected = new int[frame1.length];
+        for (int t = 0; t < FRAME_TIME; t++) {
+            interpolateFrameVanilla(expected, frame1, frame2, 1.0D - (double) t / FRAME_TIME);
+            FastTextureAtlasSprite.interpolateFrame(output, frame1, frame2, FastTextureAtlasSprite.getInterpolationWeight(t, FRAME_TIME));
+            for (int i = 0; i < expected.length; i++) {
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (Math.abs((expected[i] >>> shift & 0xFF) - (output[i] >>> shift & 0xFF)) > 1) {
+                        throw new IllegalStateException("Mismatch at tick " + t + ", pixel " + i + ": " + Integer.toHexString(expected[i]) + " != " + Integer.toHexString(output[i]));
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int[] interpolateVanilla() {
+        tick = (tick + 1) % FRAME_TIME;
+        interpolateFrameVanilla(output, frame1, frame2, 1.0D - (double) tick / FRAME_TIME);
+        return output;
+    }
+
+    @Benchmark
+    public int[] interpolateFoamy() {
+        tick = (tick + 1) % FRAME_TIME;
+        FastTextureAtlasSprite.interpolateFrame(output, frame1, frame2, FastTextureAtlasSprite.getInterpolationWeight(tick, FRAME_TIME));
+        return output;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkSpriteInterpolation.class.getSimpleName())
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
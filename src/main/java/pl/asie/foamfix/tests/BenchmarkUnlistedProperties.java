@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.material.Material;
+import net.minecraft.block.properties.IProperty;
+import net.minecraft.block.properties.PropertyDirection;
+import net.minecraft.block.state.BlockStateContainer;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Bootstrap;
+import net.minecraftforge.common.property.ExtendedBlockState;
+import net.minecraftforge.common.property.IExtendedBlockState;
+import net.minecraftforge.common.property.IUnlistedProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import pl.asie.foamfix.common.FoamyExtendedBlockStateContainer;
+
+@State(Scope.Thread)
+public class BenchmarkUnlistedProperties {
+    private static final int BLOCKS_PER_CHUNK = 4096;
+    private static final PropertyDirection FACING = PropertyDirection.create("facing");
+    private static final UnlistedInt[] UNLISTED = new UnlistedInt[] {
+            new UnlistedInt("connections"), new UnlistedInt("texture"), new UnlistedInt("light"), new UnlistedInt("layer")
+    };
+    private static final IExtendedBlockState stateForge, stateFoamy;
+
+    public static class UnlistedInt implements IUnlistedProperty<Integer> {
+        private final String name;
+
+        public UnlistedInt(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isValid(Integer value) {
+            return true;
+        }
+
+        @Override
+        public Class<Integer> getType() {
+            return Integer.class;
+        }
+
+        @Override
+        public String valueToString(Integer value) {
+            return value.toString();
+        }
+    }
+
+    public static class ForgeBlock extends Block {
+        public ForgeBlock() {
+            super(Material.ROCK);
+        }
+
+        @Override
+        protected BlockStateContainer createBlockState() {
+            return new ExtendedBlockState(this, new IProperty[] { FACING }, UNLISTED);
+        }
+    }
+
+    public static class FoamyBlock extends Block {
+        public FoamyBlock() {
+            super(Material.ROCK);
+        }
+
+        @Override
+        protected BlockStateContainer createBlockState() {
+            return new FoamyExtendedBlockStateContainer(this, new IProperty[] { FACING }, UNLISTED);
+        }
+    }
+
+    static {
+        Bootstrap.register();
+        stateForge = (IExtendedBlockState) new ForgeBlock().getDefaultState();
+        stateFoamy = (IExtendedBlockState) new FoamyBlock().getDefaultState();
+    }
+
+    // what a CTM-style getExtendedState() + model lookup does for every block in a chunk rebuild
+    private static int rebuildChunk(IExtendedBlockState clean) {
+        int sum = 0;
+        for (int i = 0; i < BLOCKS_PER_CHUNK; i++) {
+            IExtendedBlockState state = clean;
+            for (int j = 0; j < UNLISTED.length; j++) {
+                state = state.withProperty(UNLISTED[j], (i >> (j * 2)) & 0x3F);
+            }
+            for (int j = 0; j < UNLISTED.length; j++) {
+                sum += state.getValue(UNLISTED[j]);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int rebuildForge() {
+        return rebuildChunk(stateForge);
+    }
+
+    @Benchmark
+    public int rebuildFoamy() {
+        return rebuildChunk(stateFoamy);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkUnlistedProperties.class.getSimpleName())
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import net.minecraft.init.Blocks;
+import net.minecraft.init.Items;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagString;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * NBT-heavy data shared by the NBT benchmarks. Kept out of the benchmark
+ * classes themselves, so that verifying those does not load NBTTagCompound
+ * before PatchedNBT gets to patch it.
+ */
+public final class NBTFixtures {
+    private NBTFixtures() {
+
+    }
+
+    /**
+     * A shulker box full of enchanted, renamed items.
+     */
+    public static ItemStack createShulkerBox() {
+        NBTTagList items = new NBTTagList();
+        for (int i = 0; i < 27; i++) {
+            ItemStack stack = new ItemStack(Items.DIAMOND_SWORD);
+            stack.setStackDisplayName("Sword #" + i);
+            NBTTagList lore = new NBTTagList();
+            lore.appendTag(new NBTTagString("A very sharp sword."));
+            lore.appendTag(new NBTTagString("Slot " + i));
+            stack.getOrCreateSubCompound("display").setTag("Lore", lore);
+            stack.getOrCreateSubCompound("ForgeCaps").setInteger("Charge", i * 100);
+            NBTTagCompound tag = stack.writeToNBT(new NBTTagCompound());
+            tag.setByte("Slot", (byte) i);
+            items.appendTag(tag);
+        }
+
+        ItemStack stack = new ItemStack(Blocks.PURPLE_SHULKER_BOX);
+        stack.getOrCreateSubCompound("BlockEntityTag").setTag("Items", items);
+        stack.setStackDisplayName("Loot");
+        return stack;
+    }
+
+    /**
+     * A renamed, enchanted pickaxe with lore and a capability - the kind of tag
+     * inventories and hoppers compare all the time.
+     */
+    public static ItemStack createPickaxe(int repairCost) {
+        ItemStack stack = new ItemStack(Items.DIAMOND_PICKAXE);
+        stack.setStackDisplayName("Mining Tool");
+        NBTTagList lore = new NBTTagList();
+        for (int i = 0; i < 4; i++) {
+            lore.appendTag(new NBTTagString("Lore line " + i));
+        }
+        stack.getOrCreateSubCompound("display").setTag("Lore", lore);
+        NBTTagList ench = new NBTTagList();
+        for (int i = 0; i < 4; i++) {
+            NBTTagCompound enchantment = new NBTTagCompound();
+            enchantment.setShort("id", (short) (32 + i));
+            enchantment.setShort("lvl", (short) 3);
+            ench.appendTag(enchantment);
+        }
+        stack.getTagCompound().setTag("ench", ench);
+        stack.getOrCreateSubCompound("ForgeCaps").setLong("Energy", 1000000L);
+        stack.setRepairCost(repairCost);
+        return stack;
+    }
+
+    public static NBTTagCompound writeAndRead(NBTTagCompound compound) {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            CompressedStreamTools.write(compound, new DataOutputStream(output));
+            return CompressedStreamTools.read(new DataInputStream(new ByteArrayInputStream(output.toByteArray())));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A chunk as written by AnvilChunkLoader, with chests holding renamed swords
+     * and shulker boxes full of those.
+     */
+    public static NBTTagCompound createChunk(Random random, int x, int z, int tileEntities) {
+        NBTTagCompound level = new NBTTagCompound();
+        level.setInteger("xPos", x);
+        level.setInteger("zPos", z);
+        level.setLong("LastUpdate", random.nextLong());
+        level.setLong("InhabitedTime", random.nextInt(100000));
+        level.setBoolean("TerrainPopulated", true);
+        byte[] biomes = new byte[256];
+        random.nextBytes(biomes);
+        level.setByteArray("Biomes", biomes);
+        level.setIntArray("HeightMap", new int[256]);
+
+        NBTTagList sections = new NBTTagList();
+        for (int y = 0; y < 8; y++) {
+            NBTTagCompound section = new NBTTagCompound();
+            section.setByte("Y", (byte) y);
+            byte[] blocks = new byte[4096];
+            random.nextBytes(blocks);
+            section.setByteArray("Blocks", blocks);
+            section.setByteArray("Data", new byte[2048]);
+            section.setByteArray("BlockLight", new byte[2048]);
+            section.setByteArray("SkyLight", new byte[2048]);
+            sections.appendTag(section);
+        }
+        level.setTag("Sections", sections);
+
+        NBTTagList tiles = new NBTTagList();
+        for (int i = 0; i < tileEntities; i++) {
+            NBTTagCompound tile = new NBTTagCompound();
+            tile.setString("id", "minecraft:chest");
+            tile.setInteger("x", x * 16 + (i & 15));
+            tile.setInteger("y", 64 + (i >> 4));
+            tile.setInteger("z", z * 16);
+            NBTTagList items = new NBTTagList();
+            for (int slot = 0; slot < 27; slot += 2) {
+                ItemStack stack;
+                if ((slot & 6) == 0) {
+                    stack = createShulkerBox();
+                } else {
+                    stack = new ItemStack(Items.DIAMOND_SWORD, 1, random.nextInt(1561));
+                    stack.setStackDisplayName("Sword #" + random.nextInt());
+                }
+                NBTTagCompound item = stack.writeToNBT(new NBTTagCompound());
+                item.setByte("Slot", (byte) slot);
+                items.appendTag(item);
+            }
+            tile.setTag("Items", items);
+            tile.setTag("ForgeCaps", new NBTTagCompound());
+            tiles.appendTag(tile);
+        }
+        level.setTag("TileEntities", tiles);
+        level.setTag("Entities", new NBTTagList());
+
+        NBTTagCompound root = new NBTTagCompound();
+        root.setInteger("DataVersion", 1343);
+        root.setTag("Level", level);
+        return root;
+    }
+
+    /**
+     * Reads a chunk the way AnvilChunkLoader does: the Level compound and the
+     * sections right away, then every tile entity, with the ItemStacks in it.
+     *
+     * @return The ItemStacks of every tile entity.
+     */
+    public static List<List<ItemStack>> loadChunk(NBTTagCompound root) {
+        NBTTagCompound level = root.getCompoundTag("Level");
+        level.getInteger("xPos");
+        level.getInteger("zPos");
+        level.getLong("InhabitedTime");
+        level.getBoolean("TerrainPopulated");
+        level.getByteArray("Biomes");
+        level.getIntArray("HeightMap");
+
+        NBTTagList sections = level.getTagList("Sections", 10);
+        for (int i = 0; i < sections.tagCount(); i++) {
+            NBTTagCompound section = sections.getCompoundTagAt(i);
+            section.getByte("Y");
+            section.getByteArray("Blocks");
+            section.getByteArray("Data");
+            section.getByteArray("BlockLight");
+            section.getByteArray("SkyLight");
+        }
+
+        NBTTagList tiles = level.getTagList("TileEntities", 10);
+        List<List<ItemStack>> tileItems = new ArrayList<>(tiles.tagCount());
+        for (int i = 0; i < tiles.tagCount(); i++) {
+            NBTTagCompound tile = tiles.getCompoundTagAt(i);
+            tile.getString("id");
+            tile.getInteger("x");
+            tile.getInteger("y");
+            tile.getInteger("z");
+            tile.getCompoundTag("ForgeCaps");
+            NBTTagList items = tile.getTagList("Items", 10);
+            List<ItemStack> stacks = new ArrayList<>(items.tagCount());
+            for (int j = 0; j < items.tagCount(); j++) {
+                stacks.add(new ItemStack(items.getCompoundTagAt(j)));
+            }
+            tileItems.add(stacks);
+        }
+        return tileItems;
+    }
+
+    /**
+     * Writes a chunk read by loadChunk back the way AnvilChunkLoader does - into
+     * new compounds, with the tile entities' items written out from their stacks.
+     */
+    public static NBTTagCompound saveChunk(NBTTagCompound root, List<List<ItemStack>> tileItems) {
+        NBTTagCompound oldLevel = root.getCompoundTag("Level");
+        NBTTagCompound level = new NBTTagCompound();
+        level.setInteger("xPos", oldLevel.getInteger("xPos"));
+        level.setInteger("zPos", oldLevel.getInteger("zPos"));
+        level.setLong("LastUpdate", oldLevel.getLong("LastUpdate"));
+        level.setLong("InhabitedTime", oldLevel.getLong("InhabitedTime"));
+        level.setBoolean("TerrainPopulated", oldLevel.getBoolean("TerrainPopulated"));
+        level.setByteArray("Biomes", oldLevel.getByteArray("Biomes"));
+        level.setIntArray("HeightMap", oldLevel.getIntArray("HeightMap"));
+
+        NBTTagList oldSections = oldLevel.getTagList("Sections", 10);
+        NBTTagList sections = new NBTTagList();
+        for (int i = 0; i < oldSections.tagCount(); i++) {
+            NBTTagCompound oldSection = oldSections.getCompoundTagAt(i);
+            NBTTagCompound section = new NBTTagCompound();
+            section.setByte("Y", oldSection.getByte("Y"));
+            section.setByteArray("Blocks", oldSection.getByteArray("Blocks"));
+            section.setByteArray("Data", oldSection.getByteArray("Data"));
+            section.setByteArray("BlockLight", oldSection.getByteArray("BlockLight"));
+            section.setByteArray("SkyLight", oldSection.getByteArray("SkyLight"));
+            sections.appendTag(section);
+        }
+        level.setTag("Sections", sections);
+
+        NBTTagList oldTiles = oldLevel.getTagList("TileEntities", 10);
+        NBTTagList tiles = new NBTTagList();
+        for (int i = 0; i < oldTiles.tagCount(); i++) {
+            NBTTagCompound oldTile = oldTiles.getCompoundTagAt(i);
+            NBTTagCompound tile = new NBTTagCompound();
+            tile.setString("id", oldTile.getString("id"));
+            tile.setInteger("x", oldTile.getInteger("x"));
+            tile.setInteger("y", oldTile.getInteger("y"));
+            tile.setInteger("z", oldTile.getInteger("z"));
+            NBTTagList oldItems = oldTile.getTagList("Items", 10);
+            NBTTagList items = new NBTTagList();
+            List<ItemStack> stacks = tileItems.get(i);
+            for (int j = 0; j < stacks.size(); j++) {
+                NBTTagCompound item = stacks.get(j).writeToNBT(new NBTTagCompound());
+                item.setByte("Slot", oldItems.getCompoundTagAt(j).getByte("Slot"));
+                items.appendTag(item);
+            }
+            tile.setTag("Items", items);
+            tile.setTag("ForgeCaps", new NBTTagCompound());
+            tiles.appendTag(tile);
+        }
+        level.setTag("TileEntities", tiles);
+        level.setTag("Entities", new NBTTagList());
+
+        NBTTagCompound newRoot = new NBTTagCompound();
+        newRoot.setInteger("DataVersion", root.getInteger("DataVersion"));
+        newRoot.setTag("Level", level);
+        return newRoot;
+    }
+
+    /**
+     * @return The stack as loaded from disk or the network, which is what
+     * copyOnWriteNBTCompounds gets to share without copying right away.
+     */
+    public static ItemStack writeAndRead(ItemStack stack) {
+        return new ItemStack(writeAndRead(stack.writeToNBT(new NBTTagCompound())));
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021 Adrian Siekierka
+ *
+ * This file is part of FoamFix.
+ *
+ * FoamFix is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FoamFix is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FoamFix.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.asie.foamfix.tests;
+
+import com.google.common.io.ByteStreams;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+import pl.asie.foamfix.coremod.FoamFixTransformer;
+import pl.asie.foamfix.coremod.patches.NBTTagCompoundCopyOnWritePatch;
+import pl.asie.foamfix.coremod.patches.NBTTagCompoundPatch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+
+/**
+ * Loads NBTTagCompound with the smallNBTCompounds patch and, optionally, the
+ * copyOnWriteNBTCompounds and lazyNBTCompounds ones applied the same way FoamFixTransformer applies them, so that the
+ * benchmarks measure the patched class rather than a stand-in for it.
+ *
+ * This has to happen before anything loads NBTTagCompound - including the
+ * verifier, so benchmarks calling it must leave building their tags to
+ * another class, such as NBTFixtures.
+ */
+public final class PatchedNBT {
+    private static final String COMPOUND = "net.minecraft.nbt.NBTTagCompound";
+    private static final String COPY_INJECT = "pl.asie.foamfix.coremod.injections.NBTTagCompoundCopyInject";
+    private static final String LAZY_INJECT = "pl.asie.foamfix.coremod.injections.NBTTagCompoundLazyInject";
+
+    private PatchedNBT() {
+
+    }
+
+    private static byte[] getClassBytes(ClassLoader loader, String className) throws IOException {
+        try (InputStream stream = loader.getResourceAsStream(className.replace('.', '/') + ".class")) {
+            if (stream == null) {
+                throw new IOException("Class " + className + " not found!");
+            }
+            return ByteStreams.toByteArray(stream);
+        }
+    }
+
+    public static void install(boolean copyOnWrite, boolean lazy) {
+        ClassLoader loader = PatchedNBT.class.getClassLoader();
+        try {
+            Method findLoadedClass = ClassLoader.class.getDeclaredMethod("findLoadedClass", String.class);
+            findLoadedClass.setAccessible(true);
+            if (findLoadedClass.invoke(loader, COMPOUND) != null) {
+                throw new IllegalStateException("NBTTagCompound has already been loaded!");
+            }
+
+            ClassNode node = new ClassNode();
+            new ClassReader(getClassBytes(loader, COMPOUND)).accept(node, 0);
+            node = new NBTTagCompoundPatch().apply(node);
+            if (copyOnWrite) {
+                node = new NBTTagCompoundCopyOnWritePatch().apply(node);
+                node = FoamFixTransformer.spliceClasses(node, getClassBytes(loader, COPY_INJECT), COPY_INJECT,
+                        false, "copy", "func_74737_b");
+            }
+            if (lazy) {
+                node = FoamFixTransformer.spliceClasses(node, getClassBytes(loader, LAZY_INJECT), LAZY_INJECT,
+                        false, "read", "func_152446_a", "write", "func_74734_a");
+            }
+
+            ClassWriter writer = new ClassWriter(0);
+            node.accept(writer);
+            byte[] data = writer.toByteArray();
+
+            Method defineClass = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class);
+            defineClass.setAccessible(true);
+            defineClass.invoke(loader, COMPOUND, data, 0, data.length);
+        } catch (IOException | ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return Whether the NBTTagCompound in use has had the given method spliced over by install().
+     */
+    private static boolean isSpliced(String method) {
+        try {
+            for (Method m : Class.forName(COMPOUND).getDeclaredMethods()) {
+                if (m.getName().equals(method + "_foamfix_old")) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static boolean isCopyOnWrite() {
+        return isSpliced("copy");
+    }
+
+    public static boolean isLazy() {
+        return isSpliced("read");
+    }
+}